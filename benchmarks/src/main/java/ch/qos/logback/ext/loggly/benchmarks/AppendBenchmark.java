@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.ext.loggly.LogglyBatchAppender;
+
+/**
+ * <p>
+ * Throughput of {@link LogglyBatchAppender#doAppend(Object)}: layout, encoding into the buckets and rolling, by 1 to
+ * 64 threads. The filled buckets are drained without network, so the buffers don't fill up.
+ * </p>
+ * <p>
+ * Run with <code>-prof gc</code> for the allocation rate per event (<code>gc.alloc.rate.norm</code>).
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppendBenchmark {
+
+    @Param({"1", "4"})
+    public int writeStripes;
+
+    private LoggerContext context;
+
+    private LogglyBatchAppender<ILoggingEvent> appender;
+
+    private ILoggingEvent event;
+
+    @Setup
+    public void setUp() {
+        context = new LoggerContext();
+        appender = new LogglyBatchAppender<ILoggingEvent>() {
+            private final byte[] buffer = new byte[8192];
+
+            @Override
+            protected void processLogEntries(InputStream in) {
+                try {
+                    while (in.read(buffer) != -1) {
+                        // drain
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        appender.setContext(context);
+        appender.setInputKey("benchmark");
+        appender.setJmxMonitoring(false);
+        appender.setWriteStripes(writeStripes);
+        appender.start();
+
+        Logger logger = context.getLogger(AppendBenchmark.class);
+        event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "User {} logged in from {}", null,
+                new Object[]{"alice", "10.0.0.1"});
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+        context.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1Thread() {
+        appender.doAppend(event);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4Threads() {
+        appender.doAppend(event);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void append16Threads() {
+        appender.doAppend(event);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void append64Threads() {
+        appender.doAppend(event);
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.ext.loggly.io.Bucket;
+import ch.qos.logback.ext.loggly.io.DiscardingRollingOutputStream;
+
+/**
+ * Cost of {@link DiscardingRollingOutputStream#writeLine(CharSequence)} and of a bucket life cycle: roll, poll by the
+ * sender and recycle, on heap and off heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BucketRollBenchmark {
+
+    private static final String LINE = "2018-01-01T00:00:00.000Z INFO  [main] c.q.l.e.l.b.BucketRollBenchmark: User alice logged in from 10.0.0.1";
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private DiscardingRollingOutputStream out;
+
+    @Setup
+    public void setUp() {
+        out = new DiscardingRollingOutputStream(64 * 1024, 8, 1, offHeap);
+    }
+
+    @Benchmark
+    public void writeLine() throws IOException {
+        out.writeLine(LINE);
+        // keep the filled buckets empty, rolls are measured separately
+        Bucket bucket = out.getFilledBuckets().poll();
+        if (bucket != null) {
+            out.recycleBucket(bucket);
+        }
+    }
+
+    @Benchmark
+    public void rollAndRecycle() throws IOException {
+        out.writeLine(LINE);
+        out.rollCurrentBucket();
+        out.recycleBucket(out.getFilledBuckets().poll());
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.ext.loggly.LogglyBatchAppender;
+
+/**
+ * Time to append a batch of events and post them with {@link LogglyBatchAppender#processLogEntries()} to an
+ * in-process HTTP sink on the loopback interface, which reads the posts and answers like Loggly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlushBenchmark {
+
+    private static final byte[] RESPONSE = "{\"response\" : \"ok\"}".getBytes();
+
+    @Param({"none", "gzip"})
+    public String compression;
+
+    @Param({"1000"})
+    public int eventsPerFlush;
+
+    private HttpServer sink;
+
+    private LoggerContext context;
+
+    private LogglyBatchAppender<ILoggingEvent> appender;
+
+    private ILoggingEvent event;
+
+    @Setup
+    public void setUp() throws IOException {
+        sink = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        sink.createContext("/", new HttpHandler() {
+            private final byte[] buffer = new byte[8192];
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                while (in.read(buffer) != -1) {
+                    // drain
+                }
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(RESPONSE);
+                out.close();
+            }
+        });
+        sink.start();
+
+        context = new LoggerContext();
+        appender = new LogglyBatchAppender<ILoggingEvent>();
+        appender.setContext(context);
+        appender.setEndpointUrl("http://127.0.0.1:" + sink.getAddress().getPort() + "/bulk/benchmark/");
+        appender.setJmxMonitoring(false);
+        appender.setCompression(compression);
+        // flushes are triggered by the benchmark only
+        appender.setFlushIntervalInSeconds(3600);
+        appender.start();
+
+        Logger logger = context.getLogger(FlushBenchmark.class);
+        event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "User {} logged in from {}", null,
+                new Object[]{"alice", "10.0.0.1"});
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+        context.stop();
+        sink.stop(0);
+    }
+
+    @Benchmark
+    public long appendAndFlush() {
+        for (int i = 0; i < eventsPerFlush; i++) {
+            appender.doAppend(event);
+        }
+        appender.processLogEntries();
+        return appender.getSendSuccessCount();
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import ch.qos.logback.ext.loggly.io.Bucket;
+
+/**
+ * {@link Flow.Publisher} of the body of a post, from the storage of a {@link Bucket}: read-only slices of it, or its
+ * gzip compression produced chunk by chunk as the HTTP client requests them. The content is never copied whole.
+ */
+class BucketPublisher implements Flow.Publisher<ByteBuffer> {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private final ByteBuffer content;
+
+    // -1 to publish the content uncompressed
+    private final int compressionLevel;
+
+    private volatile long publishedBytes;
+
+    /**
+     * @param bucket the bucket, neither written to nor reset until the post completes
+     * @param compressionLevel the gzip compression level, -1 to publish the content uncompressed
+     */
+    BucketPublisher(Bucket bucket, int compressionLevel) {
+        this.content = bucket.asReadOnlyBuffer();
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @return the size of the body, -1 if compressed
+     */
+    long contentLength() {
+        return compressionLevel < 0 ? content.remaining() : -1;
+    }
+
+    /**
+     * @return the number of bytes published by the last subscription that completed
+     */
+    long getPublishedBytes() {
+        return publishedBytes;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        // the client subscribes again when it resends the request
+        subscriber.onSubscribe(new BucketSubscription(subscriber, content.duplicate()));
+    }
+
+    private class BucketSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer remaining;
+        private final AtomicLong demand = new AtomicLong();
+        // serializes the signals to the subscriber, which may request more from onNext
+        private final AtomicInteger drains = new AtomicInteger();
+        private volatile boolean done;
+        private Deflater deflater;
+        private CRC32 crc;
+        private int inputSize;
+        private boolean trailerWritten;
+        private long published;
+
+        BucketSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, ByteBuffer remaining) {
+            this.subscriber = subscriber;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request " + n));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        private void drain() {
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!done && demand.get() > 0) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = compressionLevel < 0 ? nextChunk() : nextCompressedChunk();
+                    } catch (RuntimeException e) {
+                        cancel();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (chunk == null) {
+                        done = true;
+                        publishedBytes = published;
+                        subscriber.onComplete();
+                    } else {
+                        demand.decrementAndGet();
+                        published += chunk.remaining();
+                        subscriber.onNext(chunk);
+                    }
+                }
+            } while (drains.decrementAndGet() != 0);
+        }
+
+        private ByteBuffer nextChunk() {
+            if (!remaining.hasRemaining()) {
+                return null;
+            }
+            ByteBuffer chunk = remaining.slice();
+            chunk.limit(Math.min(CHUNK_SIZE, chunk.remaining()));
+            remaining.position(remaining.position() + chunk.remaining());
+            return chunk;
+        }
+
+        private ByteBuffer nextCompressedChunk() {
+            if (trailerWritten) {
+                return null;
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (deflater == null) {
+                crc = new CRC32();
+                crc.update(remaining.duplicate());
+                inputSize = remaining.remaining();
+                deflater = new Deflater(compressionLevel, true);
+                // deflated straight from the storage of the bucket
+                deflater.setInput(remaining);
+                deflater.finish();
+                chunk.put(GZIP_HEADER);
+            }
+            while (chunk.hasRemaining() && !deflater.finished()) {
+                deflater.deflate(chunk);
+            }
+            if (deflater.finished() && chunk.remaining() >= GZIP_TRAILER_SIZE) {
+                chunk.putInt((int) crc.getValue());
+                chunk.putInt(inputSize);
+                trailerWritten = true;
+                deflater.end();
+            }
+            chunk.flip();
+            return chunk;
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+    }
+}
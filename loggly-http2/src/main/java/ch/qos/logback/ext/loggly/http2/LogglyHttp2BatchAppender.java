@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.http2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import ch.qos.logback.ext.loggly.LogglyBatchAppender;
+import ch.qos.logback.ext.loggly.io.BucketInputStream;
+
+/**
+ * <p>
+ * {@link LogglyBatchAppender} sending the filled buckets asynchronously with the {@link HttpClient} of Java 11. The
+ * sender threads don't wait for the responses of Loggly: bulk posts are multiplexed on a single HTTP/2 connection
+ * when the endpoint supports it, HTTP/1.1 connections otherwise, up to <code>maxInFlightRequests</code> posts at a
+ * time. Failed posts are retried like with the {@link LogglyBatchAppender}. Spilled buckets are sent with the same
+ * client one at a time, oldest first, as they stay on disk until sent. The body of a post is streamed from the storage
+ * of its bucket, and compressed on the fly with <code>compression</code> <code>gzip</code>.
+ * </p>
+ * <h2>Configuration settings</h2>
+ * <p>
+ * All the settings of the {@link LogglyBatchAppender}, and:
+ * </p>
+ * <table>
+ * <tr>
+ * <th>Property Name</th>
+ * <th>Type</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>maxInFlightRequests</td>
+ * <td>int</td>
+ * <td>Max number of posts waiting for their response. Sender threads wait when it is reached. With
+ * <code>offHeapBuckets</code>, as many more buckets are preallocated for the buckets of these posts. Default value:
+ * <code>8</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>requestTimeoutSeconds</td>
+ * <td>int</td>
+ * <td>Max time to wait for the response of a post, after which it is retried. Default value: <code>30</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>http2</td>
+ * <td>boolean</td>
+ * <td>Prefer HTTP/2 when the endpoint supports it. Default value: <code>true</code>.</td>
+ * </tr>
+ * </table>
+ */
+public class LogglyHttp2BatchAppender<E> extends LogglyBatchAppender<E> implements LogglyHttp2BatchAppenderMBean {
+
+    private int maxInFlightRequests = 8;
+
+    private int requestTimeoutSeconds = 30;
+
+    private boolean http2 = true;
+
+    private volatile HttpClient httpClient;
+
+    private volatile Semaphore inFlightRequests;
+
+    @Override
+    public void start() {
+        if (maxInFlightRequests < 1) {
+            addWarn("Invalid maxInFlightRequests " + maxInFlightRequests + ", using 1");
+            maxInFlightRequests = 1;
+        }
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(requestTimeoutSeconds));
+        if (getProxyHost() != null) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(getProxyHost(), getProxyPort())));
+        }
+        httpClient = builder.build();
+        inFlightRequests = new Semaphore(maxInFlightRequests);
+        super.start();
+    }
+
+    /**
+     * Includes the buckets of the deliveries in flight, held until their response so that they can be retried.
+     */
+    @Override
+    protected int getConsumedBucketCount() {
+        return super.getConsumedBucketCount() + maxInFlightRequests;
+    }
+
+    /**
+     * Sends the filled buckets asynchronously, the spilled ones synchronously, other streams with
+     * {@link LogglyBatchAppender}.
+     *
+     * @param in log input stream
+     */
+    @Override
+    protected void processLogEntries(InputStream in) {
+        if (!(in instanceof BucketInputStream)) {
+            super.processLogEntries(in);
+            return;
+        }
+        // spilled buckets can't be deferred
+        boolean deferred = deferDelivery(in);
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete(in, deferred, true, true);
+            return;
+        }
+
+        long nanosBefore = System.nanoTime();
+        BucketInputStream bucketIn = (BucketInputStream) in;
+        BucketPublisher body = new BucketPublisher(bucketIn.getBucket(), isGzipCompression() ? getCompressionLevel() : -1);
+        HttpRequest request;
+        try {
+            request = newRequest(bucketIn, body);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            inFlightRequests.release();
+            sendExceptionCount.incrementAndGet();
+            addError("LogglyAppender client-side exception", e);
+            complete(in, deferred, true, false);
+            return;
+        }
+
+        CompletableFuture<Void> sent = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((response, failure) -> {
+            try {
+                if (isGzipCompression()) {
+                    sentBytesAfterCompression.addAndGet(body.getPublishedBytes());
+                }
+                if (failure != null) {
+                    sendExceptionCount.incrementAndGet();
+                    addError("LogglyAppender client-side exception", failure);
+                    complete(in, deferred, true, true);
+                } else if (response.statusCode() == 200 || response.statusCode() == 202) {
+                    sendSuccessCount.incrementAndGet();
+                    complete(in, deferred, false, false);
+                } else {
+                    sendExceptionCount.incrementAndGet();
+                    addError("LogglyAppender server-side exception: " + response.statusCode() + ": " + response.body());
+                    complete(in, deferred, true, isRetryable(response.statusCode()));
+                }
+            } finally {
+                recordSendDuration(System.nanoTime() - nanosBefore);
+                inFlightRequests.release();
+            }
+            return null;
+        });
+        if (!deferred) {
+            // the outcome is read by the caller, bounded by the request timeout
+            sent.join();
+        }
+    }
+
+    private void complete(InputStream in, boolean deferred, boolean failed, boolean retryable) {
+        if (deferred) {
+            completeDelivery(in, failed, retryable);
+        } else if (failed) {
+            markFailed(in, retryable);
+        }
+    }
+
+    private HttpRequest newRequest(BucketInputStream in, BucketPublisher body) throws IOException, URISyntaxException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(getEndpoint().toURI())
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .header("Content-Type", layout.getContentType() + "; charset=UTF-8");
+        if (isGzipCompression()) {
+            builder.header("Content-Encoding", COMPRESSION_GZIP);
+            sentBytesBeforeCompression.addAndGet(in.size());
+        }
+        sentBytes.addAndGet(in.size());
+        // the compressed size is unknown until the body is published
+        HttpRequest.BodyPublisher publisher = body.contentLength() < 0
+                ? HttpRequest.BodyPublishers.fromPublisher(body)
+                : HttpRequest.BodyPublishers.fromPublisher(body, body.contentLength());
+        return builder.POST(publisher).build();
+    }
+
+    @Override
+    protected void awaitDeferredDeliveries(long timeoutMillis) throws InterruptedException {
+        Semaphore inFlightRequests = this.inFlightRequests;
+        if (inFlightRequests != null && inFlightRequests.tryAcquire(maxInFlightRequests, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            inFlightRequests.release(maxInFlightRequests);
+        }
+    }
+
+    @Override
+    public int getInFlightRequestCount() {
+        Semaphore inFlightRequests = this.inFlightRequests;
+        return inFlightRequests == null ? 0 : maxInFlightRequests - inFlightRequests.availablePermits();
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    public int getRequestTimeoutSeconds() {
+        return requestTimeoutSeconds;
+    }
+
+    public void setRequestTimeoutSeconds(int requestTimeoutSeconds) {
+        this.requestTimeoutSeconds = requestTimeoutSeconds;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+}
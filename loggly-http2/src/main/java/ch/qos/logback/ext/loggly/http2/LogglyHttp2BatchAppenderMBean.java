@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.http2;
+
+import ch.qos.logback.ext.loggly.LogglyBatchAppenderMBean;
+
+/**
+ * JMX Mbean interface for the {@link LogglyHttp2BatchAppender}.
+ */
+public interface LogglyHttp2BatchAppenderMBean extends LogglyBatchAppenderMBean {
+
+    /**
+     * Number of posts sent to Loggly and waiting for their response.
+     */
+    int getInFlightRequestCount();
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.http2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link LogglyHttp2BatchAppender} against a local HTTP/1.1 server.
+ */
+public class LogglyHttp2BatchAppenderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> posts = Collections.synchronizedList(new ArrayList<String>());
+  private final List<String> userAgents = Collections.synchronizedList(new ArrayList<String>());
+  private final AtomicInteger failuresBeforeSuccess = new AtomicInteger();
+  private final AtomicLong receivedBytes = new AtomicLong();
+  private volatile CountDownLatch respond = new CountDownLatch(0);
+  private HttpServer server;
+  private LogglyHttp2BatchAppender<String> appender;
+
+  @Before
+  public void before() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] received = exchange.getRequestBody().readAllBytes();
+        receivedBytes.addAndGet(received.length);
+        userAgents.add(exchange.getRequestHeaders().getFirst("User-Agent"));
+        InputStream in = new ByteArrayInputStream(received);
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+          in = new GZIPInputStream(in);
+        }
+        String body = new String(in.readAllBytes(), "UTF-8");
+        try {
+          respond.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        int status = failuresBeforeSuccess.getAndDecrement() > 0 ? 503 : 200;
+        if (status == 200) {
+          posts.add(body);
+        }
+        byte[] response = "{\"response\":\"ok\"}".getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, response.length);
+        exchange.getResponseBody().write(response);
+        exchange.close();
+      }
+    });
+    server.start();
+
+    appender = new LogglyHttp2BatchAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl("http://localhost:" + server.getAddress().getPort() + "/");
+    appender.setLayout(new EchoLayout<String>());
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setRetryInitialBackoffMillis(10);
+    appender.setRetryMaxBackoffMillis(20);
+  }
+
+  @After
+  public void after() {
+    appender.stop();
+    server.stop(0);
+  }
+
+  @Test
+  public void sendsBucketsAsynchronously() throws Exception {
+    appender.setMaxBucketSizeInKilobytes(1);
+    appender.start();
+
+    for (int i = 0; i < 10; i++) {
+      appender.doAppend(String.format("%0500d", i));
+    }
+    appender.processLogEntries();
+    // 1 KB buckets are rolled once they contain 3 lines
+    waitForSuccesses(4);
+
+    int lineCount = 0;
+    for (String post : posts) {
+      lineCount += post.split("\n").length;
+    }
+    assertEquals(10, lineCount);
+    assertEquals(0, appender.getInFlightRequestCount());
+  }
+
+  @Test
+  public void preallocatesBucketsForTheRequestsInFlight() {
+    appender.setSenderThreads(2);
+    appender.setMaxInFlightRequests(3);
+    appender.setOffHeapBuckets(true);
+    appender.start();
+
+    assertEquals(5, appender.getConsumedBucketCount());
+  }
+
+  @Test
+  public void retriesFailedPosts() throws Exception {
+    failuresBeforeSuccess.set(2);
+    appender.start();
+
+    appender.doAppend("message");
+    appender.processLogEntries();
+    waitForSuccesses(1);
+
+    assertEquals(2, appender.getSendRetryCount());
+    assertEquals("message\n", posts.get(0));
+  }
+
+  @Test
+  public void streamsGzipBodies() throws Exception {
+    appender.setMaxBucketSizeInKilobytes(64);
+    appender.setCompression("gzip");
+    appender.start();
+
+    List<String> expected = new ArrayList<String>();
+    long expectedBytes = 0;
+    for (int i = 0; i < 2000; i++) {
+      String message = "message " + i + " of a compressible log line";
+      expected.add(message);
+      expectedBytes += message.length() + 1;
+      appender.doAppend(message);
+    }
+    appender.processLogEntries();
+    waitForSuccesses(2);
+
+    // larger than a chunk of the body publisher
+    assertEquals(expectedBytes, appender.getSentBytesBeforeCompression());
+    assertEquals(receivedBytes.get(), appender.getSentBytesAfterCompression());
+    assertTrue(receivedBytes.get() < expectedBytes / 4);
+    // the posts are sent concurrently
+    List<String> received = new ArrayList<String>();
+    for (String post : posts) {
+      received.addAll(Arrays.asList(post.split("\n")));
+    }
+    Collections.sort(expected);
+    Collections.sort(received);
+    assertEquals(expected, received);
+  }
+
+  @Test
+  public void sendsSpilledBucketsWithTheHttpClient() throws Exception {
+    respond = new CountDownLatch(1);
+    appender.setMaxBucketSizeInKilobytes(1);
+    appender.setMaxNumberOfBuckets(2);
+    appender.setMaxInFlightRequests(1);
+    appender.setSpillDirectory(folder.getRoot().getPath());
+    appender.start();
+
+    // the first post waits for its response, the sender for the next one, the filled buckets overflow to disk
+    for (int i = 0; i < 30; i++) {
+      appender.doAppend(String.format("%0500d", i));
+    }
+    assertTrue(appender.getSpilledBucketsCount() > 0);
+    respond.countDown();
+    appender.processLogEntries();
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (countLines() < 30 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      appender.processLogEntries();
+    }
+    assertEquals(30, countLines());
+    for (String userAgent : userAgents) {
+      assertTrue(userAgent, userAgent.startsWith("Java-http-client"));
+    }
+  }
+
+  private int countLines() {
+    int lineCount = 0;
+    synchronized (posts) {
+      for (String post : posts) {
+        lineCount += post.split("\n").length;
+      }
+    }
+    return lineCount;
+  }
+
+  private void waitForSuccesses(int sendSuccessCount) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while ((appender.getSendSuccessCount() < sendSuccessCount || appender.getInFlightRequestCount() > 0)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(sendSuccessCount, appender.getSendSuccessCount());
+  }
+}
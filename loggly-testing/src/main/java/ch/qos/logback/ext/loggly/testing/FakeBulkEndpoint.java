@@ -0,0 +1,574 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * In-process HTTP/1.1 server imitating the Loggly bulk endpoint on the loopback interface, for tests and load runs of
+ * the Loggly appenders. Posts are read with or without chunked transfer encoding and gzip compression, each line of an
+ * accepted post counts as an event. Connections are kept alive between posts.
+ * </p>
+ * <p>
+ * Faults are configured with a {@link FaultProfile} or the individual setters, at any time:
+ * </p>
+ * <ul>
+ * <li>latency before the response;</li>
+ * <li>throughput cap, shared by all connections, applied while reading the posts;</li>
+ * <li>ratios of <code>429</code> and <code>503</code> responses, and {@link #setUnavailable(boolean) outages};</li>
+ * <li>ratio of connections reset before reading the post.</li>
+ * </ul>
+ */
+public class FakeBulkEndpoint {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] OK = "{\"response\" : \"ok\"}".getBytes(UTF_8);
+
+    private static final byte[] TOO_MANY_REQUESTS = "{\"response\" : \"too many requests\"}".getBytes(UTF_8);
+
+    private static final byte[] UNAVAILABLE = "{\"response\" : \"service unavailable\"}".getBytes(UTF_8);
+
+    private final int port;
+
+    private ServerSocket serverSocket;
+
+    private ExecutorService executor;
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private volatile long latencyMillis;
+
+    private volatile long maxBytesPerSecond;
+
+    private volatile double tooManyRequestsRatio;
+
+    private volatile double unavailableRatio;
+
+    private volatile double connectionResetRatio;
+
+    private volatile boolean unavailable;
+
+    private final Object throughputLock = new Object();
+
+    private long nextReadNanos;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong acceptedRequestCount = new AtomicLong();
+
+    private final AtomicLong acceptedEventCount = new AtomicLong();
+
+    private final AtomicLong acceptedBytes = new AtomicLong();
+
+    private final AtomicLong acceptedCompressedBytes = new AtomicLong();
+
+    private final AtomicLong acceptedGzipRequestCount = new AtomicLong();
+
+    private volatile boolean recordBodies;
+
+    private final Queue<byte[]> acceptedBodies = new ConcurrentLinkedQueue<byte[]>();
+
+    private final AtomicLong tooManyRequestsCount = new AtomicLong();
+
+    private final AtomicLong unavailableCount = new AtomicLong();
+
+    private final AtomicLong connectionResetCount = new AtomicLong();
+
+    /**
+     * Endpoint listening on an ephemeral port.
+     */
+    public FakeBulkEndpoint() {
+        this(0);
+    }
+
+    /**
+     * @param port the port to listen on, <code>0</code> for an ephemeral port
+     */
+    public FakeBulkEndpoint(int port) {
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = Executors.defaultThreadFactory().newThread(r);
+                thread.setName("fake-bulk-endpoint-" + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final ServerSocket serverSocket = this.serverSocket;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket);
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        closeQuietly(serverSocket);
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        executor.shutdownNow();
+        serverSocket = null;
+    }
+
+    public synchronized int getPort() {
+        if (serverSocket == null) {
+            throw new IllegalStateException("Endpoint not started");
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the URL to configure as <code>endpointUrl</code> of the appenders
+     */
+    public String getEndpointUrl() {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort() + "/bulk/fake-token/";
+    }
+
+    public void setFaultProfile(FaultProfile faultProfile) {
+        setLatencyMillis(faultProfile.getLatencyMillis());
+        setMaxBytesPerSecond(faultProfile.getMaxBytesPerSecond());
+        setTooManyRequestsRatio(faultProfile.getTooManyRequestsRatio());
+        setUnavailableRatio(faultProfile.getUnavailableRatio());
+        setConnectionResetRatio(faultProfile.getConnectionResetRatio());
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param maxBytesPerSecond bytes read per second over all connections, <code>0</code> for no limit
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    public void setTooManyRequestsRatio(double tooManyRequestsRatio) {
+        this.tooManyRequestsRatio = tooManyRequestsRatio;
+    }
+
+    public void setUnavailableRatio(double unavailableRatio) {
+        this.unavailableRatio = unavailableRatio;
+    }
+
+    public void setConnectionResetRatio(double connectionResetRatio) {
+        this.connectionResetRatio = connectionResetRatio;
+    }
+
+    /**
+     * @param unavailable {@code true} to reject all the posts with <code>503</code> until set back to {@code false}
+     */
+    public void setUnavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * @param recordBodies {@code true} to keep the bodies of the accepted posts, see {@link #getAcceptedBodies()}
+     */
+    public void setRecordBodies(boolean recordBodies) {
+        this.recordBodies = recordBodies;
+    }
+
+    /**
+     * Waits until the given number of events have been accepted.
+     *
+     * @return {@code false} if the timeout elapsed before
+     */
+    public boolean awaitAcceptedEvents(long count, long timeoutMillis) throws InterruptedException {
+        return await(acceptedEventCount, count, timeoutMillis);
+    }
+
+    /**
+     * Waits until the given number of posts have been received, whatever the response.
+     *
+     * @return {@code false} if the timeout elapsed before
+     */
+    public boolean awaitRequests(long count, long timeoutMillis) throws InterruptedException {
+        return await(requestCount, count, timeoutMillis);
+    }
+
+    private synchronized boolean await(AtomicLong counter, long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (counter.get() < count) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            wait(remainingMillis);
+        }
+        return true;
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public void reset() {
+        requestCount.set(0);
+        acceptedRequestCount.set(0);
+        acceptedEventCount.set(0);
+        acceptedBytes.set(0);
+        acceptedCompressedBytes.set(0);
+        acceptedGzipRequestCount.set(0);
+        acceptedBodies.clear();
+        tooManyRequestsCount.set(0);
+        unavailableCount.set(0);
+        connectionResetCount.set(0);
+    }
+
+    /**
+     * Number of posts received, whatever the response.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getAcceptedRequestCount() {
+        return acceptedRequestCount.get();
+    }
+
+    /**
+     * Number of lines of the accepted posts.
+     */
+    public long getAcceptedEventCount() {
+        return acceptedEventCount.get();
+    }
+
+    /**
+     * Number of bytes of the accepted posts, after decompression.
+     */
+    public long getAcceptedBytes() {
+        return acceptedBytes.get();
+    }
+
+    /**
+     * Number of bytes of the accepted gzip posts, as received.
+     */
+    public long getAcceptedCompressedBytes() {
+        return acceptedCompressedBytes.get();
+    }
+
+    /**
+     * Number of accepted posts with <code>Content-Encoding: gzip</code>.
+     */
+    public long getAcceptedGzipRequestCount() {
+        return acceptedGzipRequestCount.get();
+    }
+
+    /**
+     * Bodies of the accepted posts after decompression, in the order of their acceptance, if
+     * {@linkplain #setRecordBodies(boolean) recorded}.
+     */
+    public List<byte[]> getAcceptedBodies() {
+        return new ArrayList<byte[]>(acceptedBodies);
+    }
+
+    public long getTooManyRequestsCount() {
+        return tooManyRequestsCount.get();
+    }
+
+    public long getUnavailableCount() {
+        return unavailableCount.get();
+    }
+
+    public long getConnectionResetCount() {
+        return connectionResetCount.get();
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.add(socket);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // closed by stop()
+            } catch (RuntimeException e) {
+                // executor shut down by stop()
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (serveRequest(socket, in, out)) {
+                // keep alive
+            }
+        } catch (IOException e) {
+            // closed by the client or by stop()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return {@code false} if the connection must be closed
+     */
+    private boolean serveRequest(Socket socket, InputStream in, OutputStream out) throws IOException, InterruptedException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return false;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        String header;
+        while ((header = readLine(in)) != null && !header.isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon > 0) {
+                headers.put(header.substring(0, colon).trim().toLowerCase(Locale.ENGLISH), header.substring(colon + 1).trim());
+            }
+        }
+        requestCount.incrementAndGet();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < connectionResetRatio) {
+            connectionResetCount.incrementAndGet();
+            signal();
+            // RST instead of FIN
+            socket.setSoLinger(true, 0);
+            socket.close();
+            return false;
+        }
+
+        byte[] body = readBody(in, headers);
+        int receivedLength = body.length;
+        boolean gzip = "gzip".equalsIgnoreCase(headers.get("content-encoding"));
+        if (gzip) {
+            body = gunzip(body);
+        }
+        long latencyMillis = this.latencyMillis;
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+
+        String status;
+        byte[] response;
+        if (unavailable || random.nextDouble() < unavailableRatio) {
+            unavailableCount.incrementAndGet();
+            status = "503 Service Unavailable";
+            response = UNAVAILABLE;
+        } else if (random.nextDouble() < tooManyRequestsRatio) {
+            tooManyRequestsCount.incrementAndGet();
+            status = "429 Too Many Requests";
+            response = TOO_MANY_REQUESTS;
+        } else {
+            acceptedRequestCount.incrementAndGet();
+            acceptedBytes.addAndGet(body.length);
+            if (gzip) {
+                acceptedGzipRequestCount.incrementAndGet();
+                acceptedCompressedBytes.addAndGet(receivedLength);
+            }
+            if (recordBodies) {
+                acceptedBodies.add(body);
+            }
+            acceptedEventCount.addAndGet(countLines(body));
+            status = "200 OK";
+            response = OK;
+        }
+
+        boolean close = "close".equalsIgnoreCase(headers.get("connection"));
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + response.length + "\r\n"
+                + (close ? "Connection: close\r\n" : "")
+                + "\r\n";
+        out.write(head.getBytes(ISO_8859_1));
+        out.write(response);
+        out.flush();
+        signal();
+        return !close;
+    }
+
+    private synchronized void signal() {
+        notifyAll();
+    }
+
+    private byte[] readBody(InputStream in, Map<String, String> headers) throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentLength = headers.get("content-length");
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            while (true) {
+                String chunkHeader = readLine(in);
+                if (chunkHeader == null) {
+                    throw new EOFException("Truncated chunked body");
+                }
+                int extension = chunkHeader.indexOf(';');
+                int size = Integer.parseInt((extension < 0 ? chunkHeader : chunkHeader.substring(0, extension)).trim(), 16);
+                if (size == 0) {
+                    // trailers
+                    String trailer;
+                    while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                        // ignored
+                    }
+                    break;
+                }
+                copy(in, body, size);
+                readLine(in);
+            }
+        } else if (contentLength != null) {
+            copy(in, body, Long.parseLong(contentLength));
+        }
+        return body.toByteArray();
+    }
+
+    private void copy(InputStream in, ByteArrayOutputStream out, long length) throws IOException, InterruptedException {
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new EOFException("Truncated body");
+            }
+            throttle(read);
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Waits until the given bytes fit in the throughput cap, shared by all the connections.
+     */
+    private void throttle(int bytes) throws InterruptedException {
+        long maxBytesPerSecond = this.maxBytesPerSecond;
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long readNanos;
+        synchronized (throughputLock) {
+            long now = System.nanoTime();
+            if (nextReadNanos - now < 0) {
+                nextReadNanos = now;
+            }
+            nextReadNanos += TimeUnit.SECONDS.toNanos(bytes) / maxBytesPerSecond;
+            readNanos = nextReadNanos;
+        }
+        long waitNanos = readNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static long countLines(byte[] body) {
+        long lines = 0;
+        for (byte b : body) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        if (body.length > 0 && body[body.length - 1] != '\n') {
+            lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * @return the line without its terminator, {@code null} at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String s = new String(line.toByteArray(), ISO_8859_1);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
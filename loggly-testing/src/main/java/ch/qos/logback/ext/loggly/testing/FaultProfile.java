@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+/**
+ * Behaviors of the {@link FakeBulkEndpoint} imitating the failures of Loggly seen in production.
+ */
+public enum FaultProfile {
+    /**
+     * Healthy endpoint, acknowledging the posts right away.
+     */
+    NONE(0, 0, 0, 0, 0),
+    /**
+     * Acknowledges each post after 500 ms.
+     */
+    SLOW(500, 0, 0, 0, 0),
+    /**
+     * Reads the posts at 256 KB/s, as over a saturated link.
+     */
+    BANDWIDTH_CAPPED(0, 256 * 1024, 0, 0, 0),
+    /**
+     * Rejects half of the posts with <code>429 Too Many Requests</code>.
+     */
+    RATE_LIMITED(0, 0, 0.5, 0, 0),
+    /**
+     * Rejects all the posts with <code>503 Service Unavailable</code>.
+     */
+    OUTAGE(0, 0, 0, 1, 0),
+    /**
+     * Resets a fifth of the connections before reading the post.
+     */
+    FLAKY_CONNECTIONS(0, 0, 0, 0, 0.2);
+
+    private final long latencyMillis;
+    private final long maxBytesPerSecond;
+    private final double tooManyRequestsRatio;
+    private final double unavailableRatio;
+    private final double connectionResetRatio;
+
+    FaultProfile(long latencyMillis, long maxBytesPerSecond, double tooManyRequestsRatio, double unavailableRatio,
+                 double connectionResetRatio) {
+        this.latencyMillis = latencyMillis;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.tooManyRequestsRatio = tooManyRequestsRatio;
+        this.unavailableRatio = unavailableRatio;
+        this.connectionResetRatio = connectionResetRatio;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public double getTooManyRequestsRatio() {
+        return tooManyRequestsRatio;
+    }
+
+    public double getUnavailableRatio() {
+        return unavailableRatio;
+    }
+
+    public double getConnectionResetRatio() {
+        return connectionResetRatio;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.ext.loggly.LogglyBatchAppender;
+
+/**
+ * <p>
+ * Appends events to a started {@link LogglyBatchAppender} posting to a {@link FakeBulkEndpoint} from several threads,
+ * at a fixed rate or as fast as possible, then waits for their delivery and reports the sustained rates, the discard
+ * rate and the append-to-ack latency.
+ * </p>
+ * <p>
+ * {@link #main(String[])} runs the default appender against each {@link FaultProfile}, to size the buffers for the
+ * outage patterns: <code>LoadDriver [durationInSeconds] [eventsPerSecond] [threads]</code>.
+ * </p>
+ */
+public class LoadDriver {
+
+    private final LogglyBatchAppender<ILoggingEvent> appender;
+
+    private final FakeBulkEndpoint endpoint;
+
+    private int threads = 4;
+
+    private long eventsPerSecond = 0;
+
+    private long durationMillis = 10000;
+
+    private long drainTimeoutMillis = 10000;
+
+    private final Logger logger = new LoggerContext().getLogger(LoadDriver.class);
+
+    public LoadDriver(LogglyBatchAppender<ILoggingEvent> appender, FakeBulkEndpoint endpoint) {
+        this.appender = appender;
+        this.endpoint = endpoint;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long durationSeconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        long eventsPerSecond = args.length > 1 ? Long.parseLong(args[1]) : 20000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        for (FaultProfile faultProfile : FaultProfile.values()) {
+            FakeBulkEndpoint endpoint = new FakeBulkEndpoint();
+            endpoint.start();
+            endpoint.setFaultProfile(faultProfile);
+            LogglyBatchAppender<ILoggingEvent> appender = new LogglyBatchAppender<ILoggingEvent>();
+            appender.setContext(new LoggerContext());
+            appender.setEndpointUrl(endpoint.getEndpointUrl());
+            appender.setJmxMonitoring(false);
+            appender.start();
+            try {
+                LoadDriver driver = new LoadDriver(appender, endpoint);
+                driver.setThreads(threads);
+                driver.setEventsPerSecond(eventsPerSecond);
+                driver.setDurationMillis(TimeUnit.SECONDS.toMillis(durationSeconds));
+                LoadReport report = driver.run();
+                System.out.println(String.format(Locale.ENGLISH, "%-18s %s", faultProfile, report));
+            } finally {
+                appender.stop();
+                endpoint.stop();
+            }
+        }
+    }
+
+    /**
+     * Appends the events for the configured duration and waits for them to be accepted by the endpoint, for up to the
+     * drain timeout.
+     */
+    public LoadReport run() throws InterruptedException {
+        final long acceptedBefore = endpoint.getAcceptedEventCount();
+        long droppedBefore = appender.getDroppedEventsCount();
+        final AtomicLong appended = new AtomicLong();
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        // each thread appends its share of the rate
+        final long intervalNanos = eventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(threads) / eventsPerSecond : 0;
+
+        Thread[] appenders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            appenders[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    long nextNanos = startNanos;
+                    long now;
+                    while ((now = System.nanoTime()) - endNanos < 0) {
+                        if (intervalNanos > 0) {
+                            if (nextNanos - now > 0) {
+                                LockSupport.parkNanos(nextNanos - now);
+                                continue;
+                            }
+                            nextNanos += intervalNanos;
+                        }
+                        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                                "User {} logged in from thread {}", null, new Object[]{count, id}));
+                        count++;
+                    }
+                    appended.addAndGet(count);
+                }
+            }, "load-driver-" + t);
+            appenders[t].start();
+        }
+        for (Thread thread : appenders) {
+            thread.join();
+        }
+        long appendDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // sends the partially filled buckets right away
+        appender.processLogEntries();
+        endpoint.awaitAcceptedEvents(acceptedBefore + appended.get(), drainTimeoutMillis);
+        long deliveryDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        return new LoadReport(
+                appended.get(),
+                endpoint.getAcceptedEventCount() - acceptedBefore,
+                appender.getDroppedEventsCount() - droppedBefore,
+                appendDurationMillis,
+                deliveryDurationMillis,
+                appender.getDeliveryLatency50thPercentileInMillis(),
+                appender.getDeliveryLatency99thPercentileInMillis(),
+                appender.getDeliveryLatencyMaxInMillis());
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param eventsPerSecond target rate over all the threads, <code>0</code> to append as fast as possible
+     */
+    public void setEventsPerSecond(long eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+}
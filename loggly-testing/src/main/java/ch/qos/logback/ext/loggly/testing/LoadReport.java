@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+import java.util.Locale;
+
+/**
+ * Outcome of a {@link LoadDriver} run.
+ */
+public class LoadReport {
+
+    private final long appendedEvents;
+    private final long deliveredEvents;
+    private final long droppedEvents;
+    private final long appendDurationMillis;
+    private final long deliveryDurationMillis;
+    private final long deliveryLatency50thPercentileInMillis;
+    private final long deliveryLatency99thPercentileInMillis;
+    private final long deliveryLatencyMaxInMillis;
+
+    public LoadReport(long appendedEvents, long deliveredEvents, long droppedEvents, long appendDurationMillis,
+                      long deliveryDurationMillis, long deliveryLatency50thPercentileInMillis,
+                      long deliveryLatency99thPercentileInMillis, long deliveryLatencyMaxInMillis) {
+        this.appendedEvents = appendedEvents;
+        this.deliveredEvents = deliveredEvents;
+        this.droppedEvents = droppedEvents;
+        this.appendDurationMillis = appendDurationMillis;
+        this.deliveryDurationMillis = deliveryDurationMillis;
+        this.deliveryLatency50thPercentileInMillis = deliveryLatency50thPercentileInMillis;
+        this.deliveryLatency99thPercentileInMillis = deliveryLatency99thPercentileInMillis;
+        this.deliveryLatencyMaxInMillis = deliveryLatencyMaxInMillis;
+    }
+
+    /**
+     * Number of events given to the appender.
+     */
+    public long getAppendedEvents() {
+        return appendedEvents;
+    }
+
+    /**
+     * Number of events accepted by the endpoint.
+     */
+    public long getDeliveredEvents() {
+        return deliveredEvents;
+    }
+
+    /**
+     * Number of events dropped by the overflow policy of the appender.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    public long getAppendDurationMillis() {
+        return appendDurationMillis;
+    }
+
+    /**
+     * Time from the first append to the last delivery, or to the end of the drain timeout.
+     */
+    public long getDeliveryDurationMillis() {
+        return deliveryDurationMillis;
+    }
+
+    public double getAppendedEventsPerSecond() {
+        return appendDurationMillis == 0 ? 0 : appendedEvents * 1000.0 / appendDurationMillis;
+    }
+
+    /**
+     * Sustained delivery rate, over the whole delivery duration.
+     */
+    public double getDeliveredEventsPerSecond() {
+        return deliveryDurationMillis == 0 ? 0 : deliveredEvents * 1000.0 / deliveryDurationMillis;
+    }
+
+    /**
+     * Ratio of the appended events dropped by the appender.
+     */
+    public double getDiscardRate() {
+        return appendedEvents == 0 ? 0 : (double) droppedEvents / appendedEvents;
+    }
+
+    /**
+     * Ratio of the appended events not accepted by the endpoint: dropped, failed or still buffered.
+     */
+    public double getUndeliveredRate() {
+        return appendedEvents == 0 ? 0 : (double) (appendedEvents - deliveredEvents) / appendedEvents;
+    }
+
+    public long getDeliveryLatency50thPercentileInMillis() {
+        return deliveryLatency50thPercentileInMillis;
+    }
+
+    public long getDeliveryLatency99thPercentileInMillis() {
+        return deliveryLatency99thPercentileInMillis;
+    }
+
+    public long getDeliveryLatencyMaxInMillis() {
+        return deliveryLatencyMaxInMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "appended=%d (%.0f/s) delivered=%d (%.0f/s) discarded=%.2f%% undelivered=%.2f%% " +
+                        "append-to-ack p50=%dms p99=%dms max=%dms",
+                appendedEvents, getAppendedEventsPerSecond(), deliveredEvents, getDeliveredEventsPerSecond(),
+                getDiscardRate() * 100, getUndeliveredRate() * 100,
+                deliveryLatency50thPercentileInMillis, deliveryLatency99thPercentileInMillis, deliveryLatencyMaxInMillis);
+    }
+}
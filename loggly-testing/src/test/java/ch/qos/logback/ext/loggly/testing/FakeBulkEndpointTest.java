@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the responses and faults of the {@link FakeBulkEndpoint}.
+ */
+public class FakeBulkEndpointTest {
+
+  private final FakeBulkEndpoint endpoint = new FakeBulkEndpoint();
+
+  @Before
+  public void before() throws IOException {
+    endpoint.start();
+  }
+
+  @After
+  public void after() {
+    endpoint.stop();
+  }
+
+  @Test
+  public void acceptsPlainAndCompressedPosts() throws Exception {
+    assertEquals(200, post("first\nsecond\n".getBytes("UTF-8"), false));
+    assertEquals(200, post("third\n".getBytes("UTF-8"), true));
+
+    assertEquals(2, endpoint.getAcceptedRequestCount());
+    assertEquals(3, endpoint.getAcceptedEventCount());
+    assertEquals("first\nsecond\nthird\n".length(), endpoint.getAcceptedBytes());
+  }
+
+  @Test
+  public void rejectsPostsWhenUnavailableOrRateLimited() throws Exception {
+    endpoint.setUnavailable(true);
+    assertEquals(503, post("line\n".getBytes("UTF-8"), false));
+
+    endpoint.setUnavailable(false);
+    endpoint.setFaultProfile(FaultProfile.RATE_LIMITED);
+    endpoint.setTooManyRequestsRatio(1);
+    assertEquals(429, post("line\n".getBytes("UTF-8"), false));
+
+    assertEquals(2, endpoint.getRequestCount());
+    assertEquals(0, endpoint.getAcceptedEventCount());
+    assertEquals(1, endpoint.getUnavailableCount());
+    assertEquals(1, endpoint.getTooManyRequestsCount());
+  }
+
+  @Test
+  public void resetsConnections() throws Exception {
+    endpoint.setConnectionResetRatio(1);
+    try {
+      post("line\n".getBytes("UTF-8"), false);
+      fail("connection not reset");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(1, endpoint.getConnectionResetCount());
+  }
+
+  @Test
+  public void capsThroughput() throws Exception {
+    endpoint.setMaxBytesPerSecond(100 * 1024);
+    long start = System.nanoTime();
+
+    assertEquals(200, post(new byte[50 * 1024], false));
+
+    assertEquals(true, System.nanoTime() - start >= 400 * 1000 * 1000L);
+  }
+
+  private int post(byte[] body, boolean gzip) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(endpoint.getEndpointUrl()).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    if (gzip) {
+      connection.setRequestProperty("Content-Encoding", "gzip");
+      connection.setChunkedStreamingMode(0);
+      OutputStream out = new GZIPOutputStream(connection.getOutputStream());
+      out.write(body);
+      out.close();
+    } else {
+      connection.setFixedLengthStreamingMode(body.length);
+      OutputStream out = connection.getOutputStream();
+      out.write(body);
+      out.close();
+    }
+    return connection.getResponseCode();
+  }
+}
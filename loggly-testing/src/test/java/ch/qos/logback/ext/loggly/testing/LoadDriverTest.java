@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.ext.loggly.LogglyBatchAppender;
+
+/**
+ * Tests a short {@link LoadDriver} run against healthy and unavailable endpoints.
+ */
+public class LoadDriverTest {
+
+  private final FakeBulkEndpoint endpoint = new FakeBulkEndpoint();
+  private final LogglyBatchAppender<ILoggingEvent> appender = new LogglyBatchAppender<ILoggingEvent>();
+
+  @Before
+  public void before() throws Exception {
+    endpoint.start();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl(endpoint.getEndpointUrl());
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(100);
+    appender.start();
+  }
+
+  @After
+  public void after() {
+    appender.stop();
+    endpoint.stop();
+  }
+
+  @Test
+  public void deliversAllEventsToHealthyEndpoint() throws Exception {
+    LoadDriver driver = new LoadDriver(appender, endpoint);
+    driver.setThreads(2);
+    driver.setEventsPerSecond(2000);
+    driver.setDurationMillis(500);
+
+    LoadReport report = driver.run();
+
+    assertTrue(report.toString(), report.getAppendedEvents() > 0);
+    assertEquals(report.toString(), report.getAppendedEvents(), report.getDeliveredEvents());
+    assertEquals(0, report.getDiscardRate(), 0);
+  }
+
+  @Test
+  public void reportsUndeliveredEventsDuringOutage() throws Exception {
+    endpoint.setFaultProfile(FaultProfile.OUTAGE);
+    LoadDriver driver = new LoadDriver(appender, endpoint);
+    driver.setThreads(1);
+    driver.setEventsPerSecond(1000);
+    driver.setDurationMillis(300);
+    driver.setDrainTimeoutMillis(300);
+
+    LoadReport report = driver.run();
+
+    assertEquals(0, report.getDeliveredEvents());
+    assertEquals(1, report.getUndeliveredRate(), 0);
+  }
+}
@@ -16,19 +16,35 @@
 package ch.qos.logback.ext.loggly;
 
 import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Context;
 import ch.qos.logback.core.Layout;
 import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.ext.loggly.transport.KeepAliveHttpTransport;
+import ch.qos.logback.ext.loggly.transport.LogglyTransport;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
 import java.net.Proxy;
+import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Common base for Loggly appenders.
+ * <p>
+ * Connections to Loggly are provided by a {@link LogglyTransport}, by default a {@link KeepAliveHttpTransport} reusing
+ * the connections between posts. A custom transport can be configured with
+ * <code>&lt;transport class="..."/&gt;</code>.
+ * </p>
+ * <p>
+ * Logback-classic events can be sampled by logger and level before being laid out with <code>samplingRules</code>,
+ * see {@link EventSampler}.
+ * </p>
  *
  * @author Mårten Gustafson
  * @author Les Hazlewood
@@ -48,6 +64,13 @@ public abstract class AbstractLogglyAppender<E> extends UnsynchronizedAppenderBa
     private String proxyHost;
     protected Proxy proxy;
     private int httpReadTimeoutInMillis = 1000;
+    private long retryInitialBackoffMillis = 1000;
+    private long retryMaxBackoffMillis = 60000;
+    protected LogglyTransport transport;
+    private volatile URL endpoint;
+    private String samplingRules;
+    private EventSampler sampler;
+    private final AtomicLong samplingDroppedEventCount = new AtomicLong();
 
     @Override
     public void start() {
@@ -69,12 +92,26 @@ public abstract class AbstractLogglyAppender<E> extends UnsynchronizedAppenderBa
         } else {
             this.proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
         }
+        if (this.transport == null) {
+            this.transport = new KeepAliveHttpTransport();
+        }
+        this.sampler = null;
+        if (this.samplingRules != null && !this.samplingRules.trim().isEmpty()) {
+            try {
+                this.sampler = EventSampler.parse(this.samplingRules);
+            } catch (IllegalArgumentException e) {
+                addError("Invalid samplingRules '" + this.samplingRules + "', log events won't be sampled", e);
+            }
+        }
         super.start();
     }
 
     @Override
     public void stop() {
         super.stop();
+        if (this.transport != null) {
+            this.transport.close();
+        }
         if (this.layoutCreatedImplicitly) {
             try {
                 this.layout.stop();
@@ -85,6 +122,71 @@ public abstract class AbstractLogglyAppender<E> extends UnsynchronizedAppenderBa
         }
     }
 
+    /**
+     * Applies the <code>samplingRules</code> to the event, to be invoked before laying it out.
+     *
+     * @return {@code true} if the event must be dropped
+     */
+    protected boolean isSampledOut(E event) {
+        EventSampler sampler = this.sampler;
+        double overloadRatio = getOverloadSamplingRatio(event);
+        if (!(event instanceof ILoggingEvent) || (sampler == null && overloadRatio >= 1)) {
+            return false;
+        }
+        boolean sampledOut = sampler == null
+                ? !EventSampler.keep(overloadRatio)
+                : sampler.isSampledOut((ILoggingEvent) event, overloadRatio);
+        if (sampledOut) {
+            samplingDroppedEventCount.incrementAndGet();
+        }
+        return sampledOut;
+    }
+
+    /**
+     * Ratio of the given event kept to relieve an overloaded appender, on top of the <code>samplingRules</code>.
+     * Designed for extension.
+     *
+     * @return <code>1</code> to keep all the events
+     */
+    protected double getOverloadSamplingRatio(E event) {
+        return 1;
+    }
+
+    /**
+     * Number of log events dropped by sampling.
+     */
+    public long getSamplingDroppedEventsCount() {
+        return samplingDroppedEventCount.get();
+    }
+
+    /**
+     * Exponential backoff after consecutive failures to send: <code>retryInitialBackoffMillis</code> doubled on each
+     * failure up to <code>retryMaxBackoffMillis</code>, minus a random jitter of up to half of it.
+     *
+     * @param consecutiveFailures number of failures since the last successful send, at least <code>1</code>
+     * @return the time to wait before sending again, in milliseconds
+     */
+    protected long nextBackoffMillis(int consecutiveFailures) {
+        long backoffMillis = retryInitialBackoffMillis << Math.min(consecutiveFailures - 1, 30);
+        if (backoffMillis <= 0 || backoffMillis > retryMaxBackoffMillis) {
+            backoffMillis = retryMaxBackoffMillis;
+        }
+        return backoffMillis - ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+    }
+
+    /**
+     * @return the URL of {@link #endpointUrl}, parsed once
+     * @throws MalformedURLException invalid endpoint URL
+     */
+    protected URL getEndpoint() throws MalformedURLException {
+        URL endpoint = this.endpoint;
+        if (endpoint == null || !endpoint.toString().equals(endpointUrl)) {
+            endpoint = new URL(endpointUrl);
+            this.endpoint = endpoint;
+        }
+        return endpoint;
+    }
+
     protected byte[] toBytes(final InputStream is) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         int count;
@@ -214,6 +316,22 @@ public abstract class AbstractLogglyAppender<E> extends UnsynchronizedAppenderBa
         this.proxyHost = proxyHost;
     }
 
+    public LogglyTransport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(LogglyTransport transport) {
+        this.transport = transport;
+    }
+
+    public String getSamplingRules() {
+        return samplingRules;
+    }
+
+    public void setSamplingRules(String samplingRules) {
+        this.samplingRules = samplingRules;
+    }
+
     public int getHttpReadTimeoutInMillis() {
         return httpReadTimeoutInMillis;
     }
@@ -221,4 +339,20 @@ public abstract class AbstractLogglyAppender<E> extends UnsynchronizedAppenderBa
     public void setHttpReadTimeoutInMillis(int httpReadTimeoutInMillis) {
         this.httpReadTimeoutInMillis = httpReadTimeoutInMillis;
     }
+
+    public long getRetryInitialBackoffMillis() {
+        return retryInitialBackoffMillis;
+    }
+
+    public void setRetryInitialBackoffMillis(long retryInitialBackoffMillis) {
+        this.retryInitialBackoffMillis = retryInitialBackoffMillis;
+    }
+
+    public long getRetryMaxBackoffMillis() {
+        return retryMaxBackoffMillis;
+    }
+
+    public void setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+        this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+    }
 }
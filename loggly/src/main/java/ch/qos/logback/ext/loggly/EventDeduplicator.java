@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.CallerData;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * <p>
+ * Drops the repetitions of a log event, keyed on logger, level and message pattern, within a time window opened by
+ * its first occurrence. When the window expires, the number of dropped repetitions is reported by a summary event
+ * carrying the logger, level, MDC and caller data of the first occurrence and the message
+ * <code>Repeated N times: &lt;message pattern&gt;</code>.
+ * </p>
+ * <p>
+ * The windows are kept in a fixed size hash table without chaining: an event whose slot holds another key closes the
+ * window of that key, reporting its repetitions early. Each slot has its own lock.
+ * </p>
+ */
+class EventDeduplicator {
+
+    /**
+     * Receives the summary events, outside of the locks of the table.
+     */
+    interface SummarySink {
+        void append(ILoggingEvent summary);
+    }
+
+    private final Slot[] slots;
+
+    private final long windowMillis;
+
+    private final AtomicLong suppressedEventCount = new AtomicLong();
+
+    private final AtomicLong summaryEventCount = new AtomicLong();
+
+    /**
+     * @param tableSize number of slots, rounded up to a power of two
+     * @param windowMillis duration of the window opened by a first occurrence
+     */
+    EventDeduplicator(int tableSize, long windowMillis) {
+        if (tableSize < 1 || windowMillis < 1) {
+            throw new IllegalArgumentException("Invalid table size " + tableSize + " or window " + windowMillis);
+        }
+        int size = Integer.highestOneBit(Math.min(tableSize, 1 << 30));
+        if (size < tableSize) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param event the event to append
+     * @param sink receives the summary of the window closed by this event, if any, before this method returns
+     * @return {@code false} if the event is a repetition to drop
+     */
+    boolean accept(ILoggingEvent event, SummarySink sink) {
+        String loggerName = event.getLoggerName();
+        Level level = event.getLevel();
+        String pattern = event.getMessage();
+        long timestamp = event.getTimeStamp();
+        Slot slot = slots[spread(hash(loggerName, level, pattern)) & (slots.length - 1)];
+
+        ILoggingEvent summary;
+        synchronized (slot) {
+            if (slot.matches(loggerName, level, pattern) && timestamp - slot.windowStart < windowMillis) {
+                slot.repetitions++;
+                suppressedEventCount.incrementAndGet();
+                return false;
+            }
+            summary = slot.close(timestamp);
+            slot.open(event, timestamp);
+        }
+        report(summary, sink);
+        return true;
+    }
+
+    /**
+     * Reports the repetitions of the expired windows, to be invoked periodically.
+     */
+    void flushExpired(long nowMillis, SummarySink sink) {
+        for (Slot slot : slots) {
+            ILoggingEvent summary = null;
+            synchronized (slot) {
+                if (slot.first != null && nowMillis - slot.windowStart >= windowMillis) {
+                    summary = slot.close(nowMillis);
+                }
+            }
+            report(summary, sink);
+        }
+    }
+
+    /**
+     * Reports the repetitions of all the windows, before the appender stops.
+     */
+    void flushAll(SummarySink sink) {
+        flushExpired(Long.MAX_VALUE, sink);
+    }
+
+    private void report(ILoggingEvent summary, SummarySink sink) {
+        if (summary != null) {
+            summaryEventCount.incrementAndGet();
+            sink.append(summary);
+        }
+    }
+
+    long getSuppressedEventCount() {
+        return suppressedEventCount.get();
+    }
+
+    long getSummaryEventCount() {
+        return summaryEventCount.get();
+    }
+
+    private static int hash(String loggerName, Level level, String pattern) {
+        int h = loggerName == null ? 0 : loggerName.hashCode();
+        h = 31 * h + (level == null ? 0 : level.levelInt);
+        return 31 * h + (pattern == null ? 0 : pattern.hashCode());
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    private static class Slot {
+        ILoggingEvent first;
+        long windowStart;
+        long repetitions;
+
+        boolean matches(String loggerName, Level level, String pattern) {
+            return first != null
+                    && same(first.getLoggerName(), loggerName)
+                    && first.getLevel() == level
+                    && same(first.getMessage(), pattern);
+        }
+
+        void open(ILoggingEvent event, long timestamp) {
+            first = event;
+            windowStart = timestamp;
+            repetitions = 0;
+        }
+
+        /**
+         * @return the summary of the repetitions of the window, {@code null} if none
+         */
+        ILoggingEvent close(long timestamp) {
+            ILoggingEvent summary = null;
+            if (first != null && repetitions > 0) {
+                LoggingEvent event = new LoggingEvent();
+                event.setLoggerName(first.getLoggerName());
+                event.setLevel(first.getLevel());
+                event.setThreadName(first.getThreadName());
+                event.setLoggerContextRemoteView(first.getLoggerContextVO());
+                event.setMDCPropertyMap(first.getMDCPropertyMap());
+                // the summary has no logger to compute its caller data from
+                event.setCallerData(first.hasCallerData() ? first.getCallerData() : CallerData.EMPTY_CALLER_DATA_ARRAY);
+                event.setTimeStamp(timestamp == Long.MAX_VALUE ? System.currentTimeMillis() : timestamp);
+                event.setMessage("Repeated " + repetitions + " times: " + first.getMessage());
+                summary = event;
+            }
+            first = null;
+            repetitions = 0;
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * <p>
+ * Keeps a ratio of the log events by logger and level, before they are laid out. Rules are separated by commas and
+ * read <code>[logger][:LEVEL]=ratio</code>, for example <code>com.example.chatty:DEBUG=0.01, :INFO=0.5</code>:
+ * </p>
+ * <ul>
+ * <li>the logger matches itself and its descendants, all loggers if omitted or <code>*</code>;</li>
+ * <li>the level matches itself and the lower levels, all levels if omitted;</li>
+ * <li>the ratio of kept events ranges from <code>0</code> to <code>1</code>.</li>
+ * </ul>
+ * <p>
+ * The first matching rule applies, the events matching no rule are kept. Each event is kept or dropped at random,
+ * independently of the other events, with {@link ThreadLocalRandom}: this costs much less than formatting or laying it
+ * out, but two runs don't keep the same events.
+ * </p>
+ */
+public class EventSampler {
+
+    private final Rule[] rules;
+
+    private EventSampler(Rule[] rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param rules the rules, see {@link EventSampler}
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    public static EventSampler parse(String rules) {
+        List<Rule> parsed = new ArrayList<Rule>();
+        for (String rule : rules.split(",")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int equals = rule.lastIndexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Missing ratio in sampling rule '" + rule + "'");
+            }
+            String selector = rule.substring(0, equals).trim();
+            double ratio;
+            try {
+                ratio = Double.parseDouble(rule.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid ratio in sampling rule '" + rule + "'", e);
+            }
+            if (!(ratio >= 0 && ratio <= 1)) {
+                throw new IllegalArgumentException("Ratio out of [0, 1] in sampling rule '" + rule + "'");
+            }
+            Level level = null;
+            int colon = selector.indexOf(':');
+            if (colon >= 0) {
+                String levelName = selector.substring(colon + 1).trim();
+                level = Level.toLevel(levelName, null);
+                if (level == null) {
+                    throw new IllegalArgumentException("Invalid level in sampling rule '" + rule + "'");
+                }
+                selector = selector.substring(0, colon).trim();
+            }
+            String logger = selector.isEmpty() || "*".equals(selector) ? null : selector;
+            parsed.add(new Rule(logger, level, ratio));
+        }
+        return new EventSampler(parsed.toArray(new Rule[0]));
+    }
+
+    /**
+     * @param event the event to sample
+     * @param overloadRatio ratio of events kept on top of the rules, <code>1</code> to only apply the rules
+     * @return {@code true} if the event must be dropped
+     */
+    public boolean isSampledOut(ILoggingEvent event, double overloadRatio) {
+        double ratio = overloadRatio;
+        for (Rule rule : rules) {
+            if (rule.matches(event)) {
+                ratio *= rule.ratio;
+                break;
+            }
+        }
+        return !keep(ratio);
+    }
+
+    /**
+     * @return {@code true} with the given probability
+     */
+    static boolean keep(double ratio) {
+        if (ratio >= 1) {
+            return true;
+        }
+        if (ratio <= 0) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+
+    private static class Rule {
+        final String logger;
+        final Level level;
+        final double ratio;
+
+        Rule(String logger, Level level, double ratio) {
+            this.logger = logger;
+            this.level = level;
+            this.ratio = ratio;
+        }
+
+        boolean matches(ILoggingEvent event) {
+            if (level != null && event.getLevel().toInt() > level.toInt()) {
+                return false;
+            }
+            if (logger == null) {
+                return true;
+            }
+            String name = event.getLoggerName();
+            return name != null && name.startsWith(logger)
+                    && (name.length() == logger.length() || name.charAt(logger.length()) == '.');
+        }
+    }
+}
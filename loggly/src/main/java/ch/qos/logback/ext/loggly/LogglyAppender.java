@@ -15,13 +15,59 @@
  */
 package ch.qos.logback.ext.loggly;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.ext.loggly.io.OverflowPolicy;
 
 /**
  * An Appender that posts logging messages to <a href="http://www.loggly.com">Loggly</a>, a cloud logging service.
+ * <p>
+ * By default each message is posted to the single-event endpoint (<code>inputs/</code>) on the logging thread, so a
+ * slow endpoint slows down the application. With <code>nonBlocking</code> set to <code>true</code>, messages are laid
+ * out on the logging thread then queued, and a background sender posts whatever is queued in one request to the bulk
+ * endpoint (<code>bulk/</code>), up to <code>maxRequestSizeBytes</code> per request. An explicit
+ * <code>endpointUrl</code> must then be a bulk endpoint. Settings of the non-blocking mode:
+ * </p>
+ * <ul>
+ * <li><code>queueSize</code>: max number of queued messages. Default value: <code>1024</code>.</li>
+ * <li><code>queueFullPolicy</code>: what to do when the queue is full: <code>DISCARD_NEWEST</code> drops the message
+ * being logged, <code>DISCARD_OLDEST</code> drops the oldest queued message, <code>BLOCK</code> makes the logging thread
+ * wait for room up to <code>queueBlockTimeoutMillis</code> then drops the message. Default value:
+ * <code>DISCARD_NEWEST</code>.</li>
+ * <li><code>queueBlockTimeoutMillis</code>: Default value: <code>1000</code>.</li>
+ * <li><code>maxRequestSizeBytes</code>: max size of a request, larger messages are sent alone. Default value:
+ * <code>5242880</code> (5MB).</li>
+ * </ul>
+ * <p>
+ * With <code>streaming</code> set to <code>true</code>, the background sender keeps one chunked upload to the bulk
+ * endpoint open instead, and writes the queued messages into it as they arrive: they are coalesced in a buffer of
+ * <code>streamBufferSizeBytes</code>, flushed as soon as the queue is empty, so that they reach Loggly within
+ * milliseconds without a request per message. The upload is completed, and a new one opened for the next messages, once
+ * it reaches <code>maxRequestSizeBytes</code> or <code>streamMaxAgeMillis</code>. The queue settings above apply.
+ * Messages of an upload failing before its completion are not sent again, and the next upload is opened after the
+ * exponential backoff of <code>retryInitialBackoffMillis</code> and <code>retryMaxBackoffMillis</code>, the messages
+ * staying queued meanwhile. Settings of the streaming mode:
+ * </p>
+ * <ul>
+ * <li><code>streamBufferSizeBytes</code>: size of the chunks of the upload. Default value: <code>8192</code>.</li>
+ * <li><code>streamMaxAgeMillis</code>: max time an upload stays open. Default value: <code>10000</code>.</li>
+ * <li><code>retryInitialBackoffMillis</code>: backoff after the first failed upload, doubled on each consecutive
+ * failure with a random jitter of up to half of it. Default value: <code>1000</code>.</li>
+ * <li><code>retryMaxBackoffMillis</code>: max backoff between consecutive failed uploads. Default value:
+ * <code>60000</code>.</li>
+ * </ul>
+ * <p>
+ * Queued messages are sent when the appender stops, including the ones queued while it stops.
+ * </p>
  *
  * @author Mårten Gustafson
  * @author Les Hazlewood
@@ -30,53 +76,553 @@ import java.net.URL;
 public class LogglyAppender<E> extends AbstractLogglyAppender<E> {
 
     public static final String ENDPOINT_URL_PATH = "inputs/";
-    
+
+    public static final String BULK_ENDPOINT_URL_PATH = "bulk/";
+
+    private static final long BLOCK_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private boolean nonBlocking = false;
+
+    private int queueSize = 1024;
+
+    private String queueFullPolicy = OverflowPolicy.DISCARD_NEWEST.name();
+
+    private long queueBlockTimeoutMillis = 1000;
+
+    private int maxRequestSizeBytes = 5 * 1024 * 1024;
+
+    private boolean streaming = false;
+
+    private int streamBufferSizeBytes = 8192;
+
+    private long streamMaxAgeMillis = 10000;
+
+    private OverflowPolicy policy;
+
+    private volatile BlockingQueue<String> queue;
+
+    private volatile boolean stopping;
+
+    private Thread sender;
+
+    private final AtomicLong queueDroppedEventCount = new AtomicLong();
+
+    private final AtomicLong sentRequestCount = new AtomicLong();
+
     public LogglyAppender() {
     }
 
+    @Override
+    public void start() {
+        if (isQueued()) {
+            if (queueSize < 1) {
+                addWarn("Invalid queueSize " + queueSize + ", using 1024");
+                queueSize = 1024;
+            }
+            try {
+                policy = OverflowPolicy.valueOf(queueFullPolicy.trim().toUpperCase(Locale.ENGLISH));
+            } catch (RuntimeException e) {
+                policy = null;
+            }
+            if (policy == null || policy == OverflowPolicy.SAMPLE) {
+                addWarn("Unsupported queueFullPolicy '" + queueFullPolicy + "', using " + OverflowPolicy.DISCARD_NEWEST);
+                policy = OverflowPolicy.DISCARD_NEWEST;
+            }
+            if (streaming && streamBufferSizeBytes < 1) {
+                addWarn("Invalid streamBufferSizeBytes " + streamBufferSizeBytes + ", using 8192");
+                streamBufferSizeBytes = 8192;
+            }
+        }
+        super.start();
+        if (isQueued() && isStarted()) {
+            stopping = false;
+            queue = new ArrayBlockingQueue<String>(queueSize);
+            sender = new Thread(streaming ? new StreamingSender(queue) : new Sender(queue), "logback-loggly-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        BlockingQueue<String> queue = this.queue;
+        if (queue != null) {
+            // events appended from now on are posted synchronously
+            this.queue = null;
+            stopping = true;
+            try {
+                sender.join(Math.max(2000, 2L * getHttpReadTimeoutInMillis()));
+            } catch (InterruptedException e) {
+                addWarn("Exception waiting for termination of LogglyAppender sender", e);
+                Thread.currentThread().interrupt();
+            }
+            if (sender.isAlive()) {
+                addWarn("LogglyAppender sender still running, " + queue.size() + " queued messages may be lost");
+            } else {
+                // queued by the logging threads that read the queue before it was cleared
+                drain(queue);
+            }
+        }
+        super.stop();
+    }
+
     @Override
     protected void append(E eventObject) {
+        if (isSampledOut(eventObject)) {
+            return;
+        }
         String msg = this.layout.doLayout(eventObject);
-        postToLoggly(msg);
+        BlockingQueue<String> queue = this.queue;
+        if (queue == null) {
+            postToLoggly(msg);
+        } else {
+            enqueue(queue, msg);
+            if (stopping) {
+                // the sender may have exited before the message was queued
+                drain(queue);
+            }
+        }
+    }
+
+    /**
+     * Queues a message for the sender, or applies the <code>queueFullPolicy</code>.
+     */
+    private void enqueue(BlockingQueue<String> queue, String msg) {
+        switch (policy) {
+            case DISCARD_OLDEST:
+                while (!queue.offer(msg)) {
+                    if (queue.poll() != null) {
+                        queueDroppedEventCount.incrementAndGet();
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(queueBlockTimeoutMillis);
+                    long deadline = System.nanoTime() + remainingNanos;
+                    // wait by slices: once stopping, the sender may exit without making room
+                    while (!queue.offer(msg, Math.min(BLOCK_SLICE_NANOS, remainingNanos), TimeUnit.NANOSECONDS)) {
+                        remainingNanos = deadline - System.nanoTime();
+                        if (stopping) {
+                            drain(queue);
+                        } else if (remainingNanos <= 0) {
+                            queueDroppedEventCount.incrementAndGet();
+                            break;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    queueDroppedEventCount.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                if (!queue.offer(msg)) {
+                    queueDroppedEventCount.incrementAndGet();
+                }
+        }
     }
 
     private void postToLoggly(final String event) {
+        assert endpointUrl != null;
+        postToLoggly(event.getBytes(UTF_8));
+    }
+
+    /**
+     * Posts the given newline-delimited messages in one request, from the sender thread.
+     */
+    private void postToLoggly(final byte[] body) {
+        HttpURLConnection connection = null;
         try {
-            assert endpointUrl != null;
-            URL endpoint = new URL(endpointUrl);
-            final HttpURLConnection connection;
-            if (proxy == null) {
-                connection = (HttpURLConnection) endpoint.openConnection();
-            } else {
-                connection = (HttpURLConnection) endpoint.openConnection(proxy);
-            }
-            connection.setRequestMethod("POST");
-            connection.setDoOutput(true);
-            connection.addRequestProperty("Content-Type", this.layout.getContentType());
-            connection.connect();
-            sendAndClose(event, connection.getOutputStream());
-            connection.disconnect();
-            final int responseCode = connection.getResponseCode();
-            if (responseCode != 200) {
-                final String message = readResponseBody(connection.getInputStream());
-                addError("Loggly post failed (HTTP " + responseCode + ").  Response body:\n" + message);
+            connection = openPost();
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(body);
+            } finally {
+                output.close();
             }
+            sentRequestCount.incrementAndGet();
+            completePost(connection);
         } catch (final IOException e) {
-            addError("IOException while attempting to communicate with Loggly", e);
+            failPost(connection, e);
         }
     }
 
-    private void sendAndClose(final String event, final OutputStream output) throws IOException {
-        try {
-            output.write(event.getBytes("UTF-8"));
-        } finally {
-            output.close();
+    /**
+     * Opens a POST request to the endpoint, the caller sets the streaming mode before writing the body.
+     */
+    private HttpURLConnection openPost() throws IOException {
+        HttpURLConnection connection = transport.openConnection(getEndpoint(), proxy);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.addRequestProperty("Content-Type", this.layout.getContentType() + "; charset=UTF-8");
+        connection.setReadTimeout(getHttpReadTimeoutInMillis());
+        return connection;
+    }
+
+    /**
+     * Reads the response of a post whose body has been sent, and releases the connection to keep it alive for the
+     * next post.
+     *
+     * @return whether Loggly accepted the post
+     */
+    private boolean completePost(HttpURLConnection connection) throws IOException {
+        final int responseCode = connection.getResponseCode();
+        if (responseCode == 200) {
+            readResponseBody(connection.getInputStream());
+        } else {
+            // error responses are only readable from the error stream
+            final InputStream errorStream = connection.getErrorStream();
+            final String message = errorStream == null ? "" : readResponseBody(errorStream);
+            addError("Loggly post failed (HTTP " + responseCode + ").  Response body:\n" + message);
+        }
+        transport.releaseConnection(connection, true);
+        return responseCode == 200;
+    }
+
+    private void failPost(HttpURLConnection connection, IOException e) {
+        if (connection != null) {
+            transport.releaseConnection(connection, false);
+        }
+        addError("IOException while attempting to communicate with Loggly", e);
+    }
+
+    /**
+     * Posts the messages left in the queue from the calling thread, grouped up to <code>maxRequestSizeBytes</code>,
+     * when the sender may have exited.
+     */
+    private void drain(BlockingQueue<String> queue) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String msg;
+        while ((msg = queue.poll()) != null) {
+            byte[] line = toLine(msg);
+            if (body.size() > 0 && maxRequestSizeBytes > 0 && body.size() + line.length > maxRequestSizeBytes) {
+                postToLoggly(body.toByteArray());
+                body.reset();
+            }
+            body.write(line, 0, line.length);
+        }
+        if (body.size() > 0) {
+            postToLoggly(body.toByteArray());
         }
     }
 
+    /**
+     * Number of messages dropped because the queue of the non-blocking mode was full.
+     */
+    public long getQueueDroppedEventsCount() {
+        return queueDroppedEventCount.get();
+    }
+
+    /**
+     * Number of messages waiting in the queue of the non-blocking mode.
+     */
+    public int getQueuedEventsCount() {
+        BlockingQueue<String> queue = this.queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Number of posts to Loggly, successful or not.
+     */
+    public long getSentRequestsCount() {
+        return sentRequestCount.get();
+    }
+
+    /**
+     * Number of posts, or streamed uploads, that opened a new connection to Loggly. Only counted over TLS by the
+     * default transport.
+     */
+    public long getNewConnectionCount() {
+        return transport == null ? 0 : transport.getNewConnectionCount();
+    }
+
+    /**
+     * Number of posts, or streamed uploads, that reused a kept alive connection to Loggly. Only counted over TLS by
+     * the default transport.
+     */
+    public long getReusedConnectionCount() {
+        return transport == null ? 0 : transport.getReusedConnectionCount();
+    }
+
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public String getQueueFullPolicy() {
+        return queueFullPolicy;
+    }
+
+    public void setQueueFullPolicy(String queueFullPolicy) {
+        this.queueFullPolicy = queueFullPolicy;
+    }
+
+    public long getQueueBlockTimeoutMillis() {
+        return queueBlockTimeoutMillis;
+    }
+
+    public void setQueueBlockTimeoutMillis(long queueBlockTimeoutMillis) {
+        this.queueBlockTimeoutMillis = queueBlockTimeoutMillis;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getStreamBufferSizeBytes() {
+        return streamBufferSizeBytes;
+    }
+
+    public void setStreamBufferSizeBytes(int streamBufferSizeBytes) {
+        this.streamBufferSizeBytes = streamBufferSizeBytes;
+    }
+
+    public long getStreamMaxAgeMillis() {
+        return streamMaxAgeMillis;
+    }
+
+    public void setStreamMaxAgeMillis(long streamMaxAgeMillis) {
+        this.streamMaxAgeMillis = streamMaxAgeMillis;
+    }
+
+    public int getMaxRequestSizeBytes() {
+        return maxRequestSizeBytes;
+    }
+
+    public void setMaxRequestSizeBytes(int maxRequestSizeBytes) {
+        this.maxRequestSizeBytes = maxRequestSizeBytes;
+    }
+
     @Override
     protected String getEndpointPrefix() {
-        return ENDPOINT_URL_PATH;
+        return isQueued() ? BULK_ENDPOINT_URL_PATH : ENDPOINT_URL_PATH;
+    }
+
+    private boolean isQueued() {
+        return nonBlocking || streaming;
+    }
+
+    /**
+     * Issue #21: messages must end with a new-line to delimit them within the bulk post.
+     */
+    private static byte[] toLine(String msg) {
+        return (msg.endsWith("\n") ? msg : msg + "\n").getBytes(UTF_8);
+    }
+
+    /**
+     * Posts the queued messages, grouped up to <code>maxRequestSizeBytes</code>, until the appender stops and the
+     * queue is drained.
+     */
+    private class Sender implements Runnable {
+        private final BlockingQueue<String> queue;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        // message polled that didn't fit in the previous request
+        private byte[] pending;
+
+        Sender(BlockingQueue<String> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    if (pending == null) {
+                        String msg = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if (msg == null) {
+                            if (stopping && queue.isEmpty()) {
+                                return;
+                            }
+                            continue;
+                        }
+                        pending = toLine(msg);
+                    }
+                    send();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    addWarn("Exception posting log entries", e);
+                }
+            }
+        }
+
+        private void send() {
+            body.reset();
+            body.write(pending, 0, pending.length);
+            pending = null;
+            String msg;
+            while ((msg = queue.poll()) != null) {
+                byte[] line = toLine(msg);
+                if (maxRequestSizeBytes > 0 && body.size() + line.length > maxRequestSizeBytes) {
+                    pending = line;
+                    break;
+                }
+                body.write(line, 0, line.length);
+            }
+            postToLoggly(body.toByteArray());
+        }
+    }
+
+    /**
+     * Writes the queued messages into a long-lived chunked upload, completed and replaced once too large or too old,
+     * until the appender stops and the queue is drained.
+     */
+    private class StreamingSender implements Runnable {
+        private final BlockingQueue<String> queue;
+        private HttpURLConnection connection;
+        private OutputStream output;
+        private long size;
+        private long openedNanos;
+        private int consecutiveFailures;
+        private long backoffUntilNanos;
+
+        StreamingSender(BlockingQueue<String> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    long backoffMillis = remainingBackoffMillis();
+                    if (backoffMillis > 0) {
+                        if (stopping) {
+                            // the queued messages are posted by stop() once the sender has exited
+                            return;
+                        }
+                        Thread.sleep(Math.min(100, backoffMillis));
+                        continue;
+                    }
+                    String msg = queue.poll(pollTimeoutMillis(), TimeUnit.MILLISECONDS);
+                    if (msg == null) {
+                        if (isExpired() || stopping) {
+                            complete();
+                        }
+                        if (stopping && queue.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    write(toLine(msg));
+                } catch (InterruptedException e) {
+                    complete();
+                    return;
+                } catch (IOException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    addWarn("Exception streaming log entries", e);
+                    fail(e);
+                }
+            }
+        }
+
+        /**
+         * Waits up to the expiry of the current upload, if any.
+         */
+        private long pollTimeoutMillis() {
+            if (connection == null) {
+                return 100;
+            }
+            long remainingMillis = streamMaxAgeMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos);
+            return Math.max(1, Math.min(100, remainingMillis));
+        }
+
+        private long remainingBackoffMillis() {
+            return consecutiveFailures == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(backoffUntilNanos - System.nanoTime());
+        }
+
+        /**
+         * Suspends the uploads after a failure, with the exponential backoff of the retries of the batch appender, so
+         * that an unavailable endpoint isn't reconnected to in a tight loop. The messages stay queued meanwhile.
+         */
+        private void backOff() {
+            consecutiveFailures++;
+            backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(nextBackoffMillis(consecutiveFailures));
+        }
+
+        private boolean isExpired() {
+            return connection != null && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos) >= streamMaxAgeMillis;
+        }
+
+        private void write(byte[] line) throws IOException {
+            if (connection != null && maxRequestSizeBytes > 0 && size + line.length > maxRequestSizeBytes) {
+                complete();
+            }
+            if (connection == null) {
+                open();
+            }
+            output.write(line);
+            size += line.length;
+            if (queue.isEmpty()) {
+                // send the coalesced messages without waiting for the chunk to fill up
+                output.flush();
+            }
+            if (isExpired()) {
+                complete();
+            }
+        }
+
+        private void open() throws IOException {
+            connection = openPost();
+            connection.setChunkedStreamingMode(streamBufferSizeBytes);
+            openedNanos = System.nanoTime();
+            size = 0;
+            output = connection.getOutputStream();
+            sentRequestCount.incrementAndGet();
+        }
+
+        /**
+         * Ends the current upload, if any, and reads the response of Loggly.
+         */
+        private void complete() {
+            HttpURLConnection connection = this.connection;
+            if (connection == null) {
+                return;
+            }
+            try {
+                output.close();
+                boolean accepted = completePost(connection);
+                this.connection = null;
+                this.output = null;
+                if (accepted) {
+                    consecutiveFailures = 0;
+                } else {
+                    backOff();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Drops the current upload after a failure, the next message opens a new one after a backoff.
+         */
+        private void fail(Exception e) {
+            if (e instanceof IOException) {
+                failPost(connection, (IOException) e);
+            } else if (connection != null) {
+                transport.releaseConnection(connection, false);
+            }
+            connection = null;
+            output = null;
+            backOff();
+        }
     }
 }
 
@@ -16,28 +16,51 @@
 package ch.qos.logback.ext.loggly;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.sql.Timestamp;
-import java.util.concurrent.BlockingDeque;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.spi.DeferredProcessingAware;
+import ch.qos.logback.ext.loggly.async.FullBufferPolicy;
+import ch.qos.logback.ext.loggly.async.RingBuffer;
+import ch.qos.logback.ext.loggly.async.WaitStrategy;
+import ch.qos.logback.ext.loggly.io.Bucket;
+import ch.qos.logback.ext.loggly.io.BucketInputStream;
+import ch.qos.logback.ext.loggly.io.CountingOutputStream;
 import ch.qos.logback.ext.loggly.io.DiscardingRollingOutputStream;
+import ch.qos.logback.ext.loggly.io.GzipOutputStream;
 import ch.qos.logback.ext.loggly.io.IoUtils;
+import ch.qos.logback.ext.loggly.io.MappedSpillQueue;
+import ch.qos.logback.ext.loggly.io.OverflowPolicy;
+import ch.qos.logback.ext.loggly.metrics.Meter;
+import ch.qos.logback.ext.loggly.metrics.RollingHistogram;
+import ch.qos.logback.ext.loggly.transport.KeepAliveHttpTransport;
+import ch.qos.logback.ext.loggly.transport.SendRateLimiter;
 
 /**
  * <p>
@@ -45,7 +68,7 @@ import ch.qos.logback.ext.loggly.io.IoUtils;
  * </p>
  * <p><strong>Note:</strong>Loggly's Syslog API is much more scalable than the HTTP API which should mostly be used in
  * low-volume or non-production systems. The HTTP API can be very convenient to workaround firewalls.</p>
- * <p>If the {@link LogglyBatchAppender} saturates and discards log messages, the following warning message is
+ * <p>If the {@link LogglyBatchAppender} saturates and discards a bucket of log messages, the following warning message is
  * appended to both Loggly and {@link System#err}: <br/>
  * "<code>$date - OutputStream is full, discard previous logs</code>"</p>
  * <h2>Configuration settings</h2>
@@ -84,6 +107,12 @@ import ch.qos.logback.ext.loggly.io.IoUtils;
  * <td>port of a proxy server. Must be a valid int but is ignored if <code>proxyHost</code> is blank or null.</td>
  * </tr>
  * <tr>
+ * <td>transport</td>
+ * <td>{@link ch.qos.logback.ext.loggly.transport.LogglyTransport}</td>
+ * <td>Provider of the HTTP connections, configured with <code>&lt;transport class="..."/&gt;</code>. Default:
+ * {@link ch.qos.logback.ext.loggly.transport.KeepAliveHttpTransport}, keeping the connections alive between posts.</td>
+ * </tr>
+ * <tr>
  * <td>jmxMonitoring</td>
  * <td>boolean</td>
  * <td>Enable registration of a monitoring MBean named
@@ -100,11 +129,251 @@ import ch.qos.logback.ext.loggly.io.IoUtils;
  * <td>Max size of each bucket. Default value: <code>1024</code> Kilobytes (1MB).</td>
  * </tr>
  * <tr>
+ * <td>maxEventSizeBytes</td>
+ * <td>int</td>
+ * <td>Max size of a log message in UTF-8, Loggly rejects larger events. Larger messages are truncated on a character
+ * boundary and end with "<code>...[truncated]</code>". <code>0</code> for no limit. Default value: <code>1048576</code>
+ * (1MB).</td>
+ * </tr>
+ * <tr>
+ * <td>maxRequestSizeBytes</td>
+ * <td>int</td>
+ * <td>Max size of a bulk post before compression, Loggly rejects larger posts. Buckets are rolled before a message
+ * that would exceed it, so posts are split between messages. <code>0</code> for no limit. Default value:
+ * <code>5242880</code> (5MB).</td>
+ * </tr>
+ * <tr>
+ * <td>writeStripes</td>
+ * <td>int</td>
+ * <td>Number of buckets written concurrently, each appending thread writing into the bucket of the stripe selected
+ * by its thread id. Active buckets count against <code>maxNumberOfBuckets</code> which must be greater or equal.
+ * Increase it on many-core hosts where many threads log concurrently. Default value: <code>1</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>offHeapBuckets</td>
+ * <td>boolean</td>
+ * <td>Preallocate the buckets in a single direct (off-heap) buffer of
+ * <code>(maxNumberOfBuckets + 1 + senderThreads) * maxBucketSizeInKilobytes</code> Kilobytes instead of growing them on the heap.
+ * Default value: <code>false</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>spillDirectory</td>
+ * <td>String</td>
+ * <td>Directory of memory-mapped files receiving the buckets that don't fit in memory instead of discarding them.
+ * They are sent after the in-memory buckets once Loggly accepts logs again, including after a restart. Must not be
+ * shared between appenders. Default value: none, buckets are discarded.</td>
+ * </tr>
+ * <tr>
+ * <td>spillMaxSizeInMegabytes</td>
+ * <td>int</td>
+ * <td>Max size of the files in <code>spillDirectory</code>. Default value: <code>64</code> Megabytes.</td>
+ * </tr>
+ * <tr>
+ * <td>overflowPolicy</td>
+ * <td>String</td>
+ * <td>What to do when all the buckets are full and can't be spilled: <code>DISCARD_NEWEST</code> discards the bucket
+ * being rolled, <code>DISCARD_OLDEST</code> discards the oldest bucket waiting to be sent to keep fresh logs,
+ * <code>BLOCK</code> makes the logging thread wait for room up to <code>overflowBlockTimeoutMillis</code> then discards
+ * the newest logs, <code>SAMPLE</code> only keeps a random sample of the log messages while the buckets are full and
+ * drops the messages that don't fit in the active bucket, never whole buckets. Default value:
+ * <code>DISCARD_NEWEST</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>overflowBlockTimeoutMillis</td>
+ * <td>long</td>
+ * <td>Max time a logging thread waits for room with the <code>BLOCK</code> overflow policy, in milliseconds.
+ * Default value: <code>1000</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>overflowSampleRate</td>
+ * <td>double</td>
+ * <td>Ratio of the log messages kept while the buckets are full with the <code>SAMPLE</code> overflow policy, from
+ * <code>0</code> to <code>1</code>. Default value: <code>0.1</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>samplingRules</td>
+ * <td>String</td>
+ * <td>Ratio of the logback-classic events kept by logger and level, decided before the layout, for example
+ * <code>com.example.chatty:DEBUG=0.01</code>. See {@link EventSampler}. Default value: none (all events kept).</td>
+ * </tr>
+ * <tr>
+ * <td>overloadHighWaterMark</td>
+ * <td>double</td>
+ * <td>Ratio of the buffer, from <code>0</code> to <code>1</code>, above which the events up to
+ * <code>overloadSamplingLevel</code> are sampled, rather than discarding whole buckets once the buffer is full. The
+ * ratio of kept events decreases linearly from <code>1</code> at the high-water mark to
+ * <code>overloadMinSamplingRatio</code> for a full buffer, and follows the buffer size smoothly. Default value:
+ * <code>0</code> (disabled).</td>
+ * </tr>
+ * <tr>
+ * <td>overloadMinSamplingRatio</td>
+ * <td>double</td>
+ * <td>Min ratio of the events kept while overloaded. Default value: <code>0.01</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>overloadSamplingLevel</td>
+ * <td>String</td>
+ * <td>Highest level of the events sampled while overloaded. Default value: <code>INFO</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>dedupWindowMillis</td>
+ * <td>long</td>
+ * <td>Drop the repetitions of a log event with the same logger, level and message pattern during this time after its
+ * first occurrence. The number of repetitions is then logged as <code>Repeated N times: &lt;message pattern&gt;</code>
+ * with the level and logger of the event. Only applies to logback-classic events. Default value: <code>0</code>
+ * (disabled).</td>
+ * </tr>
+ * <tr>
+ * <td>dedupTableSize</td>
+ * <td>int</td>
+ * <td>Number of distinct log events tracked at once by the deduplication, rounded up to a power of two. Default
+ * value: <code>1024</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>async</td>
+ * <td>boolean</td>
+ * <td>Lay out the log events on background workers instead of the logging thread. The logging thread only captures
+ * the event data bound to it (MDC, thread name, formatted message) and publishes the event into a bounded lock-free
+ * ring buffer; sampling still happens before, deduplication and layout after. Buffered events are flushed by
+ * <code>stop()</code>. Default value: <code>false</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncBufferSize</td>
+ * <td>int</td>
+ * <td>Number of events of the ring buffer, rounded up to a power of two, at least <code>2</code>. Default value: <code>8192</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncWorkers</td>
+ * <td>int</td>
+ * <td>Number of threads laying out the events of the ring buffer. With more than one, events may be buffered out of
+ * order; set <code>writeStripes</code> to the same number so that they don't contend on a bucket. Default value:
+ * <code>1</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncWaitStrategy</td>
+ * <td>String</td>
+ * <td>How idle workers, and logging threads blocked by a full ring buffer, wait: <code>PARKING</code> parks up to a
+ * millisecond, <code>YIELDING</code> and <code>BUSY_SPIN</code> trade CPU for latency. See {@link WaitStrategy}.
+ * Default value: <code>PARKING</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncFullPolicy</td>
+ * <td>String</td>
+ * <td>What a logging thread does when the ring buffer is full: <code>BLOCK</code> waits for room,
+ * <code>DISCARD</code> drops the event, <code>RUN_IN_CALLER</code> lays it out on the logging thread. Default value:
+ * <code>BLOCK</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>asyncIncludeCallerData</td>
+ * <td>boolean</td>
+ * <td>Capture the caller data of the logback-classic events on the logging thread, required by patterns such as
+ * <code>%caller</code>, <code>%file</code> or <code>%line</code> in async mode. Expensive. Default value:
+ * <code>false</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>priorityLevel</td>
+ * <td>String</td>
+ * <td>Level from which log events are buffered in a separate reserved buffer, never evicted by lower level events. These
+ * events wake up a sender immediately and are sent before the other buffered events, so they may arrive out of order
+ * with them. Only applies to <code>ILoggingEvent</code>s. Sample: <code>WARN</code>. Default value: none, all events
+ * share the same buffer.</td>
+ * </tr>
+ * <tr>
+ * <td>priorityBufferSizeInKilobytes</td>
+ * <td>int</td>
+ * <td>Size of the reserved buffer of <code>priorityLevel</code> events, split in 4 buckets. When it is full, the newest
+ * priority events are discarded. Default value: <code>256</code> Kilobytes.</td>
+ * </tr>
+ * <tr>
+ * <td>compression</td>
+ * <td>String</td>
+ * <td><code>gzip</code> to compress the bulk posts (<code>Content-Encoding: gzip</code>) while they are streamed
+ * to Loggly, or <code>none</code>. Default value: <code>none</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>compressionLevel</td>
+ * <td>int</td>
+ * <td>Compression level from <code>1</code> (fastest) to <code>9</code> (smallest). Default value: <code>6</code>.</td>
+ * </tr>
+ * <tr>
  * <td>flushIntervalInSeconds</td>
  * <td>int</td>
  * <td>Interval of the buffer flush to Loggly API. Default value: <code>3</code>.</td>
  * </tr>
  * <tr>
+ * <td>lingerMillis</td>
+ * <td>long</td>
+ * <td>Max time a partially filled bucket waits before being sent, in milliseconds. Overrides
+ * <code>flushIntervalInSeconds</code> when set. Full buckets don't wait: they are sent as soon as they are rolled.
+ * Default value: <code>flushIntervalInSeconds</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>adaptive</td>
+ * <td>boolean</td>
+ * <td>Tune the size of the posts and the linger every second from the measured send latency, following AIMD: after a
+ * period without failure and with an average send duration below <code>adaptiveTargetSendLatencyMillis</code>, the
+ * buckets are rolled at a larger size, if they fill up, and the linger is shortened, both additively; otherwise the
+ * roll size is halved and the linger doubled. The roll size stays between <code>adaptiveMinBucketSizeInKilobytes</code>
+ * and <code>maxBucketSizeInKilobytes</code>, the linger between <code>adaptiveMinLingerMillis</code> and
+ * <code>lingerMillis</code>. The current values are exposed over JMX. Default value: <code>false</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveTargetSendLatencyMillis</td>
+ * <td>long</td>
+ * <td>Average send duration above which the adaptive mode backs off. Default value: <code>1000</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveMinBucketSizeInKilobytes</td>
+ * <td>int</td>
+ * <td>Min roll size of the adaptive mode, and step of its increase. Default value: <code>64</code> Kilobytes.</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveMinLingerMillis</td>
+ * <td>long</td>
+ * <td>Min linger of the adaptive mode, and step of its decrease. Default value: <code>100</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>maxSendBytesPerSecond</td>
+ * <td>long</td>
+ * <td>Max bytes of log entries, before compression, sent to Loggly per second, with bursts of up to one second of
+ * bytes. While throttled, the buckets stay buffered and the <code>overflowPolicy</code> applies when the buffer is
+ * full. Default value: <code>0</code> (no limit).</td>
+ * </tr>
+ * <tr>
+ * <td>maxSendRequestsPerSecond</td>
+ * <td>long</td>
+ * <td>Max posts sent to Loggly per second, with bursts of up to one second of posts. Default value: <code>0</code>
+ * (no limit).</td>
+ * </tr>
+ * <tr>
+ * <td>senderThreads</td>
+ * <td>int</td>
+ * <td>Number of threads sending filled buckets to Loggly concurrently. Increase it when the round trip to Loggly
+ * limits the throughput and buckets get discarded during bursts. The default transport only keeps
+ * <code>http.maxConnections</code> (system property, default <code>5</code>) connections alive per endpoint, raise it
+ * to at least the number of sender threads. Default value: <code>1</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>maxSendAttempts</td>
+ * <td>int</td>
+ * <td>Max number of attempts to send a bucket. Buckets failing with a client-side exception (connection refused,
+ * timeout...), a <code>429</code> or a <code>5xx</code> response are put back at the head of the queue and sent
+ * again after a backoff; other failures are not retried. Spilled buckets stay on disk between their attempts.
+ * <code>1</code> disables retries. Default value: <code>3</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>retryInitialBackoffMillis</td>
+ * <td>long</td>
+ * <td>Backoff after the first failure, in milliseconds. It doubles on each consecutive failure, with a random jitter
+ * of up to half of it, and resets on the first success. Nothing is sent during the backoff.
+ * Default value: <code>1000</code>.</td>
+ * </tr>
+ * <tr>
+ * <td>retryMaxBackoffMillis</td>
+ * <td>long</td>
+ * <td>Max backoff between consecutive failures, in milliseconds. Default value: <code>60000</code>.</td>
+ * </tr>
+ * <tr>
  * <td>connReadTimeoutSeconds</td>
  * <td>int</td>
  * <td>How Long the HTTP Connection will wait on reads. Default value: <code>1</code> second.</td>
@@ -150,22 +419,149 @@ import ch.qos.logback.ext.loggly.io.IoUtils;
 public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements LogglyBatchAppenderMBean {
 
     public static final String ENDPOINT_URL_PATH = "bulk/";
+
+    public static final String COMPRESSION_NONE = "none";
+
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
     
     private boolean debug = false;
 
     private int flushIntervalInSeconds = 3;
 
+    private long lingerMillis = -1;
+
+    private volatile long currentLingerMillis;
+
+    private boolean adaptive = false;
+
+    private long adaptiveTargetSendLatencyMillis = 1000;
+
+    private int adaptiveMinBucketSizeInKilobytes = 64;
+
+    private long adaptiveMinLingerMillis = 100;
+
     private DiscardingRollingOutputStream outputStream;
 
+    private DiscardingRollingOutputStream priorityOutputStream;
+
+    private Level priorityLevel;
+
+    private double overloadHighWaterMark = 0;
+
+    private double overloadMinSamplingRatio = 0.01;
+
+    private Level overloadSamplingLevel = Level.INFO;
+
+    private volatile double overloadSamplingRatio = 1;
+
+    private long dedupWindowMillis = 0;
+
+    private int dedupTableSize = 1024;
+
+    private EventDeduplicator deduplicator;
+
+    private final EventDeduplicator.SummarySink dedupSummarySink = new EventDeduplicator.SummarySink() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void append(ILoggingEvent summary) {
+            try {
+                // only logback-classic events are deduplicated
+                write((E) summary);
+            } catch (RuntimeException e) {
+                // don't abort the flush of the other summaries, nor stop()
+                addError("Exception appending the summary of repeated log events", e);
+            }
+        }
+    };
+
+    private int priorityBufferSizeInKilobytes = 256;
+
+    private boolean async = false;
+
+    private int asyncBufferSize = 8192;
+
+    private int asyncWorkers = 1;
+
+    private String asyncWaitStrategy = WaitStrategy.PARKING.name();
+
+    private String asyncFullPolicy = FullBufferPolicy.BLOCK.name();
+
+    private boolean asyncIncludeCallerData = false;
+
+    private WaitStrategy waitStrategy;
+
+    private FullBufferPolicy fullBufferPolicy;
+
+    // null when not in async mode, or once stopping
+    private volatile RingBuffer<E> ringBuffer;
+
+    private volatile boolean asyncStopping;
+
+    private Thread[] asyncWorkerThreads;
+
+    private final AtomicLong asyncDiscardedEventsCount = new AtomicLong();
+
+    private final AtomicLong asyncRunInCallerEventsCount = new AtomicLong();
+
     protected final AtomicLong sendDurationInNanos = new AtomicLong();
 
+    private final RollingHistogram sendLatencyInMicrosHistogram = new RollingHistogram(TimeUnit.HOURS.toMicros(1));
+
+    private final RollingHistogram bucketFillTimeInMillisHistogram = new RollingHistogram(TimeUnit.HOURS.toMillis(1));
+
+    private final RollingHistogram bucketSizeInBytesHistogram = new RollingHistogram(Integer.MAX_VALUE);
+
+    private final RollingHistogram oldestEventDeliveryLatencyInMillisHistogram = new RollingHistogram(TimeUnit.DAYS.toMillis(1));
+
+    private final RollingHistogram newestEventDeliveryLatencyInMillisHistogram = new RollingHistogram(TimeUnit.DAYS.toMillis(1));
+
+    private final Set<BucketDelivery> inFlightDeliveries = ConcurrentHashMap.newKeySet();
+
+    private final Meter appendedEvents = new Meter();
+
+    private final Meter sentRequests = new Meter();
+
+    private final Meter sentBytesMeter = new Meter();
+
     protected final AtomicLong sentBytes = new AtomicLong();
 
+    protected final AtomicLong sentBytesBeforeCompression = new AtomicLong();
+
+    protected final AtomicLong sentBytesAfterCompression = new AtomicLong();
+
     protected final AtomicInteger sendSuccessCount = new AtomicInteger();
 
     protected final AtomicInteger sendExceptionCount = new AtomicInteger();
 
-    private ScheduledExecutorService scheduledExecutor;
+    protected final AtomicInteger sendRetryCount = new AtomicInteger();
+
+    protected final AtomicInteger failedBucketsCount = new AtomicInteger();
+
+    private final AtomicInteger consecutiveSendFailureCount = new AtomicInteger();
+
+    private volatile long backoffUntilNanos;
+
+    private int maxSendAttempts = 3;
+
+    private volatile ScheduledExecutorService scheduledExecutor;
+
+    private long maxSendBytesPerSecond = 0;
+
+    private long maxSendRequestsPerSecond = 0;
+
+    private SendRateLimiter sendRateLimiter;
+
+    private volatile long throttledUntilNanos;
+
+    private final AtomicInteger throttledCount = new AtomicInteger();
+
+    private final AtomicBoolean throttledExportScheduled = new AtomicBoolean();
+
+    private int senderThreads = 1;
+
+    private final AtomicBoolean filledBucketsExportScheduled = new AtomicBoolean();
 
     private boolean jmxMonitoring = true;
 
@@ -177,6 +573,33 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
 
     private int maxBucketSizeInKilobytes = 1024;
 
+    private int maxEventSizeBytes = 1024 * 1024;
+
+    private int maxRequestSizeBytes = 5 * 1024 * 1024;
+
+    private int writeStripes = 1;
+
+    private boolean offHeapBuckets = false;
+
+    private String spillDirectory;
+
+    private int spillMaxSizeInMegabytes = 64;
+
+    private final ReentrantLock spillDrainLock = new ReentrantLock();
+
+    // attempts to send the oldest spilled bucket, guarded by the spillDrainLock
+    private int spilledBucketSendAttempts;
+
+    private String overflowPolicy = OverflowPolicy.DISCARD_NEWEST.name();
+
+    private long overflowBlockTimeoutMillis = 1000;
+
+    private double overflowSampleRate = 0.1;
+
+    private String compression = COMPRESSION_NONE;
+
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+
     private Charset charset = Charset.forName("UTF-8");
 
     /* Store Connection Read Timeout */
@@ -184,39 +607,164 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
 
     @Override
     protected void append(E eventObject) {
-        if (!isStarted()) {
+        if (!isStarted() || isSampledOut(eventObject)) {
+            return;
+        }
+        RingBuffer<E> ringBuffer = this.ringBuffer;
+        if (ringBuffer != null) {
+            publish(ringBuffer, eventObject);
+        } else {
+            process(eventObject);
+        }
+    }
+
+    /**
+     * Hands the event over to the async workers, or applies the full buffer policy.
+     */
+    private void publish(RingBuffer<E> ringBuffer, E eventObject) {
+        if (eventObject instanceof DeferredProcessingAware) {
+            // MDC, thread name and formatted message are bound to the logging thread
+            ((DeferredProcessingAware) eventObject).prepareForDeferredProcessing();
+        }
+        if (asyncIncludeCallerData && eventObject instanceof ILoggingEvent) {
+            ((ILoggingEvent) eventObject).getCallerData();
+        }
+        int attempt = 0;
+        while (!ringBuffer.offer(eventObject)) {
+            switch (fullBufferPolicy) {
+                case DISCARD:
+                    asyncDiscardedEventsCount.incrementAndGet();
+                    return;
+                case RUN_IN_CALLER:
+                    asyncRunInCallerEventsCount.incrementAndGet();
+                    process(eventObject);
+                    return;
+                default:
+                    if (asyncStopping) {
+                        // the workers may be gone
+                        process(eventObject);
+                        return;
+                    }
+                    attempt = waitStrategy.idle(attempt);
+            }
+        }
+        if (asyncStopping) {
+            // published after stopAsyncWorkers() may have drained the ring buffer for the last time
+            while ((eventObject = ringBuffer.poll()) != null) {
+                process(eventObject);
+            }
+        }
+    }
+
+    /**
+     * Deduplicates then lays out and buffers the event, on the logging thread or on an async worker.
+     */
+    private void process(E eventObject) {
+        EventDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator != null && eventObject instanceof ILoggingEvent
+                && !deduplicator.accept((ILoggingEvent) eventObject, dedupSummarySink)) {
             return;
         }
+        write(eventObject);
+    }
+
+    private void write(E eventObject) {
         String msg = this.layout.doLayout(eventObject);
+        appendedEvents.mark(1);
 
         // Issue #21: Make sure messages end with new-line to delimit
         // individual log events within the batch sent to loggly.
-        if (!msg.endsWith("\n")) {
-          msg += "\n";
-        }
-
+        // writeLine() encodes the message straight into the bucket and appends the new-line if missing.
         try {
-            outputStream.write(msg.getBytes(charset));
+            if (isPriority(eventObject)) {
+                priorityOutputStream.writeLine(msg);
+                scheduleFilledBucketsExport();
+            } else {
+                outputStream.writeLine(msg);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    protected double getOverloadSamplingRatio(E eventObject) {
+        double overloadSamplingRatio = this.overloadSamplingRatio;
+        if (overloadSamplingRatio >= 1 || !(eventObject instanceof ILoggingEvent)) {
+            return 1;
+        }
+        return ((ILoggingEvent) eventObject).getLevel().toInt() <= overloadSamplingLevel.toInt() ? overloadSamplingRatio : 1;
+    }
+
+    private boolean isPriority(E eventObject) {
+        return priorityOutputStream != null
+                && eventObject instanceof ILoggingEvent
+                && ((ILoggingEvent) eventObject).getLevel().isGreaterOrEqual(priorityLevel);
+    }
+
     @Override
     public void start() {
+        if (senderThreads < 1) {
+            addWarn("Invalid senderThreads " + senderThreads + ", using 1");
+            senderThreads = 1;
+        }
+        if ((transport == null || transport instanceof KeepAliveHttpTransport)
+                && senderThreads > KeepAliveHttpTransport.getMaxIdleConnectionsPerEndpoint()) {
+            addWarn("senderThreads " + senderThreads + " exceeds the " + KeepAliveHttpTransport.getMaxIdleConnectionsPerEndpoint()
+                    + " connections kept alive per endpoint, set the http.maxConnections system property to at least "
+                    + senderThreads + " to reuse them");
+        }
+        if (priorityBufferSizeInKilobytes < 1) {
+            addWarn("Invalid priorityBufferSizeInKilobytes " + priorityBufferSizeInKilobytes + ", using 256");
+            priorityBufferSizeInKilobytes = 256;
+        }
+        if (maxSendAttempts < 1) {
+            addWarn("Invalid maxSendAttempts " + maxSendAttempts + ", using 1");
+            maxSendAttempts = 1;
+        }
+        if (writeStripes < 1 || writeStripes > maxNumberOfBuckets) {
+            int stripes = Math.max(1, Math.min(writeStripes, maxNumberOfBuckets));
+            addWarn("Invalid writeStripes " + writeStripes + ", using " + stripes);
+            writeStripes = stripes;
+        }
+        OverflowPolicy policy;
+        try {
+            policy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (RuntimeException e) {
+            addWarn("Unsupported overflowPolicy '" + overflowPolicy + "', using " + OverflowPolicy.DISCARD_NEWEST);
+            policy = OverflowPolicy.DISCARD_NEWEST;
+        }
+        if (overflowSampleRate < 0 || overflowSampleRate > 1) {
+            addWarn("Invalid overflowSampleRate " + overflowSampleRate + ", using 0.1");
+            overflowSampleRate = 0.1;
+        }
+        if (!COMPRESSION_NONE.equalsIgnoreCase(compression) && !COMPRESSION_GZIP.equalsIgnoreCase(compression)) {
+            addWarn("Unsupported compression '" + compression + "', logs will be sent uncompressed");
+            compression = COMPRESSION_NONE;
+        }
+        if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+            addWarn("Invalid compressionLevel " + compressionLevel + ", using " + DEFAULT_COMPRESSION_LEVEL);
+            compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+        }
 
         // OUTPUTSTREAM
         outputStream = new DiscardingRollingOutputStream(
                 maxBucketSizeInKilobytes * 1024,
-                maxNumberOfBuckets) {
+                maxNumberOfBuckets,
+                writeStripes,
+                offHeapBuckets,
+                getConsumedBucketCount()) {
             @Override
-            protected void onBucketDiscard(ByteArrayOutputStream discardedBucket) {
+            protected void onBucketDiscard(Bucket discardedBucket) {
                 if (isDebug()) {
                     addInfo("Discard bucket - " + getDebugInfo());
                 }
                 String s = new Timestamp(System.currentTimeMillis()) + " - OutputStream is full, discard previous logs" + LINE_SEPARATOR;
                 try {
-                    getFilledBuckets().peekLast().write(s.getBytes(charset));
+                    byte[] bytes = s.getBytes(charset);
+                    if (bytes.length <= discardedBucket.remainingCapacity()) {
+                        discardedBucket.write(bytes);
+                    }
                     addWarn(s);
                 } catch (IOException e) {
                     addWarn("Exception appending warning message '" + s + "'", e);
@@ -224,26 +772,123 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
             }
 
             @Override
-            protected void onBucketRoll(ByteArrayOutputStream rolledBucket) {
+            protected void onBucketRoll(Bucket rolledBucket) {
                 if (isDebug()) {
                     addInfo("Roll bucket - " + getDebugInfo());
                 }
+                recordRolledBucket(rolledBucket);
+                scheduleFilledBucketsExport();
             }
 
         };
+        outputStream.setOverflowPolicy(policy);
+        outputStream.setBlockTimeoutMillis(overflowBlockTimeoutMillis);
+        outputStream.setSampleRate(overflowSampleRate);
+        configureSizeLimits(outputStream);
+
+        // PRIORITY
+        if (priorityLevel != null) {
+            priorityOutputStream = new DiscardingRollingOutputStream(priorityBufferSizeInKilobytes * 1024 / 4, 4) {
+                @Override
+                protected void onBucketDiscard(Bucket discardedBucket) {
+                    addWarn(new Timestamp(System.currentTimeMillis()) + " - Priority buffer is full, discard previous " + priorityLevel + " logs");
+                }
+
+                @Override
+                protected void onBucketRoll(Bucket rolledBucket) {
+                    recordRolledBucket(rolledBucket);
+                }
+            };
+            configureSizeLimits(priorityOutputStream);
+        }
+
+        // SPILL
+        if (spillDirectory != null && !spillDirectory.trim().isEmpty()) {
+            long spillMaxSizeInBytes = spillMaxSizeInMegabytes * 1024L * 1024L;
+            // room for a few full buckets per segment
+            int segmentSizeInBytes = (int) Math.min(Math.max(4 * 1024 * 1024, 4L * maxBucketSizeInKilobytes * 1024), spillMaxSizeInBytes);
+            try {
+                MappedSpillQueue spillQueue = new MappedSpillQueue(new File(spillDirectory), segmentSizeInBytes, spillMaxSizeInBytes);
+                if (spillQueue.getQuarantinedSegmentCount() > 0) {
+                    addWarn("Quarantined " + spillQueue.getQuarantinedSegmentCount() + " corrupt spill files in " + spillDirectory);
+                }
+                if (!spillQueue.isEmpty()) {
+                    addInfo("Replay " + spillQueue.getSizeInBytes() + " bytes of logs spilled in " + spillDirectory);
+                }
+                outputStream.setSpillQueue(spillQueue);
+            } catch (IOException e) {
+                addError("Exception opening spill directory '" + spillDirectory + "', overflowing logs will be discarded", e);
+            }
+        }
+
+        if (maxSendBytesPerSecond > 0 || maxSendRequestsPerSecond > 0) {
+            try {
+                sendRateLimiter = new SendRateLimiter(maxSendBytesPerSecond, maxSendRequestsPerSecond);
+            } catch (IllegalArgumentException e) {
+                addWarn("Invalid send rate limits, sends won't be limited", e);
+            }
+        }
+
+        if (dedupWindowMillis > 0) {
+            try {
+                deduplicator = new EventDeduplicator(dedupTableSize, dedupWindowMillis);
+            } catch (IllegalArgumentException e) {
+                addWarn("Invalid dedupTableSize " + dedupTableSize + ", log events won't be deduplicated", e);
+            }
+        }
 
         // SCHEDULER
         ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
             @Override
             public Thread newThread(Runnable r) {
                 Thread thread = Executors.defaultThreadFactory().newThread(r);
-                thread.setName("logback-loggly-appender");
+                thread.setName(senderThreads == 1 ? "logback-loggly-appender" : "logback-loggly-appender-" + threadCount.incrementAndGet());
                 thread.setDaemon(true);
                 return thread;
             }
         };
-        scheduledExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
-        scheduledExecutor.scheduleWithFixedDelay(new LogglyExporter(), flushIntervalInSeconds, flushIntervalInSeconds, TimeUnit.SECONDS);
+        // each exporter drains the filled buckets concurrently with the others
+        ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(senderThreads, threadFactory);
+        // the delayed exports are superseded by the last one of stop()
+        scheduledExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduledExecutor = scheduledExecutor;
+        if (outputStream.getSpillQueue() != null) {
+            // keep the creation of the spill files off the logging threads
+            outputStream.getSpillQueue().setPreallocationExecutor(scheduledExecutor);
+        }
+        currentLingerMillis = getEffectiveLingerMillis();
+        for (int i = 0; i < senderThreads; i++) {
+            scheduledExecutor.schedule(new RescheduledLogglyExporter(), currentLingerMillis, TimeUnit.MILLISECONDS);
+        }
+        overloadSamplingRatio = 1;
+        if (overloadHighWaterMark > 0 && overloadHighWaterMark < 1) {
+            scheduledExecutor.scheduleWithFixedDelay(new OverloadController(), OverloadController.PERIOD_IN_MILLIS, OverloadController.PERIOD_IN_MILLIS, TimeUnit.MILLISECONDS);
+        } else if (overloadHighWaterMark != 0) {
+            addWarn("Invalid overloadHighWaterMark " + overloadHighWaterMark + ", overload sampling disabled");
+        }
+        scheduledExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                appendedEvents.tick();
+                sentRequests.tick();
+                sentBytesMeter.tick();
+            }
+        }, Meter.TICK_INTERVAL_IN_SECONDS, Meter.TICK_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+        scheduledExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sendLatencyInMicrosHistogram.tick();
+                bucketFillTimeInMillisHistogram.tick();
+                bucketSizeInBytesHistogram.tick();
+                oldestEventDeliveryLatencyInMillisHistogram.tick();
+                newestEventDeliveryLatencyInMillisHistogram.tick();
+            }
+        }, RollingHistogram.WINDOW_IN_SECONDS, RollingHistogram.WINDOW_IN_SECONDS, TimeUnit.SECONDS);
+        if (adaptive) {
+            scheduledExecutor.scheduleWithFixedDelay(new AdaptiveController(), AdaptiveController.PERIOD_IN_MILLIS, AdaptiveController.PERIOD_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }
 
         // MONITORING
         if (jmxMonitoring) {
@@ -257,30 +902,129 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
 
         // super.setOutputStream() must be defined before calling super.start()
         super.start();
-    }
 
-    @Override
-    public void stop() {
-        scheduledExecutor.shutdown();
-
-        processLogEntries();
-
-        if (registeredObjectName != null) {
-            try {
-                mbeanServer.unregisterMBean(registeredObjectName);
-            } catch (Exception e) {
-                addWarn("Exception unRegistering mbean " + registeredObjectName, e);
-            }
+        // ASYNC, once the layout is started
+        if (async) {
+            startAsyncWorkers();
         }
+    }
 
+    private void startAsyncWorkers() {
+        if (asyncWorkers < 1) {
+            addWarn("Invalid asyncWorkers " + asyncWorkers + ", using 1");
+            asyncWorkers = 1;
+        }
         try {
-            scheduledExecutor.awaitTermination(2 * this.flushIntervalInSeconds, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            addWarn("Exception waiting for termination of LogglyAppender scheduler", e);
+            waitStrategy = WaitStrategy.valueOf(asyncWaitStrategy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (RuntimeException e) {
+            addWarn("Unsupported asyncWaitStrategy '" + asyncWaitStrategy + "', using " + WaitStrategy.PARKING);
+            waitStrategy = WaitStrategy.PARKING;
+        }
+        try {
+            fullBufferPolicy = FullBufferPolicy.valueOf(asyncFullPolicy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (RuntimeException e) {
+            addWarn("Unsupported asyncFullPolicy '" + asyncFullPolicy + "', using " + FullBufferPolicy.BLOCK);
+            fullBufferPolicy = FullBufferPolicy.BLOCK;
+        }
+        RingBuffer<E> ringBuffer;
+        try {
+            ringBuffer = new RingBuffer<E>(asyncBufferSize);
+        } catch (IllegalArgumentException e) {
+            addWarn("Invalid asyncBufferSize " + asyncBufferSize + ", log events will be laid out synchronously", e);
+            return;
+        }
+        asyncStopping = false;
+        asyncWorkerThreads = new Thread[asyncWorkers];
+        for (int i = 0; i < asyncWorkers; i++) {
+            Thread thread = new Thread(new AsyncWorker(ringBuffer), asyncWorkers == 1 ? "logback-loggly-async" : "logback-loggly-async-" + (i + 1));
+            thread.setDaemon(true);
+            asyncWorkerThreads[i] = thread;
+            thread.start();
+        }
+        this.ringBuffer = ringBuffer;
+    }
+
+    /**
+     * Lets the async workers drain the ring buffer, then buffers the events published meanwhile on the calling
+     * thread. The events appended from now on are laid out synchronously, and the producers that still publish to
+     * the ring buffer drain it themselves.
+     */
+    private void stopAsyncWorkers() {
+        RingBuffer<E> ringBuffer = this.ringBuffer;
+        if (ringBuffer == null) {
+            return;
+        }
+        this.ringBuffer = null;
+        asyncStopping = true;
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(2 * getEffectiveLingerMillis(), 2000));
+        for (Thread thread : asyncWorkerThreads) {
+            try {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())));
+            } catch (InterruptedException e) {
+                addWarn("Exception waiting for termination of LogglyAppender async workers", e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        E eventObject;
+        while ((eventObject = ringBuffer.poll()) != null) {
+            process(eventObject);
+        }
+    }
+
+    private void configureSizeLimits(DiscardingRollingOutputStream stream) {
+        try {
+            stream.setMaxEventSizeInBytes(maxEventSizeBytes);
+        } catch (IllegalArgumentException e) {
+            addWarn("Invalid maxEventSizeBytes " + maxEventSizeBytes + ", log messages won't be truncated", e);
+        }
+        try {
+            stream.setMaxRequestSizeInBytes(maxRequestSizeBytes);
+        } catch (IllegalArgumentException e) {
+            addWarn("Invalid maxRequestSizeBytes " + maxRequestSizeBytes + ", posts size won't be limited", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        stopAsyncWorkers();
+        scheduledExecutor.shutdown();
+
+        EventDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator != null) {
+            deduplicator.flushAll(dedupSummarySink);
+        }
+
+        // last attempt to send the buffered logs, even if backing off or throttled
+        backoffUntilNanos = 0;
+        sendRateLimiter = null;
+        throttledUntilNanos = 0;
+        processLogEntries();
+        try {
+            awaitDeferredDeliveries(Math.max(2 * getEffectiveLingerMillis(), 2000));
+        } catch (InterruptedException e) {
+            addWarn("Exception waiting for the logs sent asynchronously", e);
+        }
+
+        if (registeredObjectName != null) {
+            try {
+                mbeanServer.unregisterMBean(registeredObjectName);
+            } catch (Exception e) {
+                addWarn("Exception unRegistering mbean " + registeredObjectName, e);
+            }
+        }
+
+        try {
+            scheduledExecutor.awaitTermination(Math.max(2 * getEffectiveLingerMillis(), 2000), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            addWarn("Exception waiting for termination of LogglyAppender scheduler", e);
         }
 
         // stop appender (ie close outputStream) after sending it to Loggly
         outputStream.close();
+        if (outputStream.getSpillQueue() != null) {
+            outputStream.getSpillQueue().close();
+        }
 
         super.stop();
     }
@@ -294,24 +1038,254 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
             addInfo("Process log entries - " + getDebugInfo());
         }
 
+        EventDeduplicator deduplicator = this.deduplicator;
+        if (deduplicator != null) {
+            deduplicator.flushExpired(System.currentTimeMillis(), dedupSummarySink);
+        }
+
         outputStream.rollCurrentBucketIfNotEmpty();
-        BlockingDeque<ByteArrayOutputStream> filledBuckets = outputStream.getFilledBuckets();
+        processFilledBuckets();
+    }
 
-        ByteArrayOutputStream bucket;
+    /**
+     * Send the filled buckets to Loggly, without rolling the current ones. Priority buckets, including the current
+     * ones, are sent first.
+     */
+    protected void processFilledBuckets() {
+        while (!isBackingOff() && !isThrottled()) {
+            // priority events first, including the ones appended while sending the previous bucket
+            DiscardingRollingOutputStream stream = priorityOutputStream;
+            Bucket bucket = null;
+            if (stream != null) {
+                stream.rollCurrentBucketIfNotEmpty();
+                bucket = stream.getFilledBuckets().poll();
+            }
+            if (bucket == null) {
+                stream = outputStream;
+                bucket = stream.getFilledBuckets().poll();
+            }
+            if (bucket == null) {
+                break;
+            }
+            if (throttle(bucket)) {
+                // keep the bucket buffered until tokens are available, the overflow policy applies if it's full
+                stream.requeueBucket(bucket);
+                break;
+            }
 
-        while ((bucket = filledBuckets.poll()) != null) {
+            BucketDelivery delivery = new BucketDelivery(bucket, stream);
+            inFlightDeliveries.add(delivery);
+            recordRequest(bucket);
             try {
-                InputStream in = new ByteArrayInputStream(bucket.toByteArray());
-                processLogEntries(in);
+                processLogEntries(delivery);
             } catch (Exception e) {
                 addWarn("Internal error", e);
             }
-            outputStream.recycleBucket(bucket);
+            if (!delivery.isDeferred()) {
+                complete(delivery);
+            }
+        }
+
+        processSpilledLogEntries();
+    }
+
+    /**
+     * Retries or recycles the bucket of a filled bucket delivery, once sent.
+     */
+    private void complete(BucketDelivery delivery) {
+        inFlightDeliveries.remove(delivery);
+        updateBackoff(delivery);
+        Bucket bucket = delivery.getBucket();
+        if (!delivery.isFailed()) {
+            recordDelivered(bucket);
+        }
+        if (isRetried(delivery, bucket.incrementSendAttempts())) {
+            if (delivery.stream.requeueBucket(bucket)) {
+                sendRetryCount.incrementAndGet();
+            } else {
+                failedBucketsCount.incrementAndGet();
+            }
+        } else {
+            if (delivery.isFailed()) {
+                failedBucketsCount.incrementAndGet();
+            }
+            delivery.stream.recycleBucket(bucket);
+        }
+    }
+
+    /**
+     * Retry policy of the filled and spilled buckets: transient failures are retried up to <code>maxSendAttempts</code>,
+     * client errors are not.
+     *
+     * @param sendAttempts number of attempts made to send the bucket, including the given delivery
+     */
+    private boolean isRetried(BucketDelivery delivery, int sendAttempts) {
+        return delivery.isRetryable() && sendAttempts < maxSendAttempts;
+    }
+
+    /**
+     * Invoked by {@link #processLogEntries(InputStream)} implementations sending asynchronously: the bucket of the
+     * given stream is neither recycled nor retried until {@link #completeDelivery(InputStream, boolean, boolean)} is
+     * invoked, so the stream remains readable.
+     *
+     * @param in the stream given to {@link #processLogEntries(InputStream)}
+     * @return {@code false} if the delivery can't be deferred, the stream must then be sent before returning
+     */
+    protected boolean deferDelivery(InputStream in) {
+        if (in instanceof BucketDelivery && ((BucketDelivery) in).stream != null) {
+            ((BucketDelivery) in).deferred = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Completes a delivery {@linkplain #deferDelivery(InputStream) deferred} by an asynchronous sender, from any thread.
+     *
+     * @param in the deferred stream
+     * @param failed {@code true} if the send failed
+     * @param retryable {@code true} if the failure is transient and the logs should be sent again
+     */
+    protected void completeDelivery(InputStream in, boolean failed, boolean retryable) {
+        if (!(in instanceof BucketDelivery) || !((BucketDelivery) in).isDeferred()) {
+            throw new IllegalArgumentException("Not a deferred delivery: " + in);
+        }
+        BucketDelivery delivery = (BucketDelivery) in;
+        if (failed) {
+            delivery.failed(retryable);
+        }
+        complete(delivery);
+    }
+
+    /**
+     * Waits for the deliveries sent asynchronously to complete, before the appender stops. Designed for extension.
+     *
+     * @param timeoutMillis max time to wait
+     */
+    protected void awaitDeferredDeliveries(long timeoutMillis) throws InterruptedException {
+
+    }
+
+    /**
+     * Resets or increases the backoff according to the outcome of the given delivery.
+     */
+    private void updateBackoff(BucketDelivery delivery) {
+        if (delivery.isRetryable()) {
+            backOff();
+        } else {
+            consecutiveSendFailureCount.set(0);
+            backoffUntilNanos = 0;
+        }
+    }
+
+    /**
+     * Suspends the sending after a retryable failure: exponential backoff with a random jitter of up to half of it.
+     * The filled buckets are sent again by a wake up scheduled at the end of the backoff.
+     */
+    private void backOff() {
+        long backoffMillis = nextBackoffMillis(consecutiveSendFailureCount.incrementAndGet());
+        backoffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+
+        ScheduledExecutorService scheduledExecutor = this.scheduledExecutor;
+        if (scheduledExecutor != null) {
+            try {
+                scheduledExecutor.schedule(new FilledBucketsExporter(), backoffMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // appender is stopping
+            }
+        }
+    }
+
+    /**
+     * Takes the send rate tokens of the given bucket.
+     *
+     * @return {@code true} if the rate limit is reached, the bucket must not be sent, a wake up is then scheduled once
+     * enough tokens are available
+     */
+    private boolean throttle(Bucket bucket) {
+        SendRateLimiter sendRateLimiter = this.sendRateLimiter;
+        if (sendRateLimiter == null) {
+            return false;
+        }
+        long waitNanos = sendRateLimiter.tryAcquire(bucket.size());
+        if (waitNanos == 0) {
+            return false;
+        }
+        throttledCount.incrementAndGet();
+        throttledUntilNanos = System.nanoTime() + waitNanos;
+
+        ScheduledExecutorService scheduledExecutor = this.scheduledExecutor;
+        if (scheduledExecutor != null && throttledExportScheduled.compareAndSet(false, true)) {
+            try {
+                scheduledExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        throttledExportScheduled.set(false);
+                        new FilledBucketsExporter().run();
+                    }
+                }, waitNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // appender is stopping
+                throttledExportScheduled.set(false);
+            }
+        }
+        return true;
+    }
+
+    private boolean isBackingOff() {
+        long backoffUntilNanos = this.backoffUntilNanos;
+        return backoffUntilNanos != 0 && backoffUntilNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * Send spilled log entries to Loggly, oldest first, until a send fails with a retryable error. Spilled buckets are
+     * only removed from disk once sent, rejected, or after <code>maxSendAttempts</code>, so that a bucket failing
+     * again and again doesn't hold back the ones spilled after it. Attempts are counted in memory and start over
+     * after a restart.
+     */
+    private void processSpilledLogEntries() {
+        if (outputStream.getSpillQueue() == null || !spillDrainLock.tryLock()) {
+            return;
+        }
+        try {
+            Bucket bucket;
+            while (!isBackingOff() && !isThrottled() && (bucket = outputStream.peekSpilledBucket()) != null) {
+                if (throttle(bucket)) {
+                    outputStream.recycleBucket(bucket);
+                    break;
+                }
+                // spilled buckets are sent synchronously, they stay on disk until sent
+                BucketDelivery delivery = new BucketDelivery(bucket, null);
+                recordRequest(bucket);
+                try {
+                    processLogEntries(delivery);
+                } catch (Exception e) {
+                    addWarn("Internal error", e);
+                    delivery.failed(true);
+                } finally {
+                    outputStream.recycleBucket(bucket);
+                }
+                updateBackoff(delivery);
+                if (isRetried(delivery, ++spilledBucketSendAttempts)) {
+                    // Loggly is still unavailable, keep the bucket on disk until the end of the backoff
+                    sendRetryCount.incrementAndGet();
+                    break;
+                }
+                spilledBucketSendAttempts = 0;
+                if (delivery.isFailed()) {
+                    failedBucketsCount.incrementAndGet();
+                }
+                outputStream.removeSpilledBucket();
+            }
+        } catch (Exception e) {
+            addWarn("Internal error", e);
+        } finally {
+            spillDrainLock.unlock();
         }
     }
 
     /**
-     * Creates a configured HTTP connection to a URL (does not open the
+     * Creates a configured HTTP connection to a URL with the {@link #transport} (does not open the
      * connection)
      *
      * @param url target URL
@@ -319,12 +1293,7 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
      * @throws IOException connection error
      */
     protected HttpURLConnection getHttpConnection(URL url) throws IOException {
-        HttpURLConnection conn;
-        if (proxy == null) {
-            conn = (HttpURLConnection) url.openConnection();
-        } else {
-            conn = (HttpURLConnection) url.openConnection(proxy);
-        }
+        HttpURLConnection conn = transport.openConnection(url, proxy);
 
         conn.setDoOutput(true);
         conn.setDoInput(true);
@@ -335,26 +1304,47 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
     }
 
     /**
-     * Send log entries to Loggly
+     * Send log entries to Loggly. When given a {@link BucketInputStream}, the bucket is written straight to the
+     * connection with a known <code>Content-Length</code>, or to the compressing stream if compression is enabled.
+     * Failures are reported to the retry policy when the stream is the one given by {@link #processFilledBuckets()}.
      * @param in log input stream
      */
     protected void processLogEntries(InputStream in) {
         long nanosBefore = System.nanoTime();
+        HttpURLConnection conn = null;
         try {
 
-            HttpURLConnection conn = getHttpConnection(new URL(endpointUrl));
+            conn = getHttpConnection(getEndpoint());
             /* Set connection Read Timeout */
             conn.setReadTimeout(connReadTimeoutSeconds*1000);
-            BufferedOutputStream out = new BufferedOutputStream(conn.getOutputStream());
-
-            long len = IoUtils.copy(in, out);
+            long len;
+            if (isGzipCompression()) {
+                conn.setRequestProperty("Content-Encoding", COMPRESSION_GZIP);
+                conn.setChunkedStreamingMode(0);
+                CountingOutputStream compressedOut = new CountingOutputStream(conn.getOutputStream());
+                OutputStream out = new GzipOutputStream(compressedOut, compressionLevel);
+                len = writeLogEntries(in, out);
+                out.close();
+                sentBytesBeforeCompression.addAndGet(len);
+                sentBytesAfterCompression.addAndGet(compressedOut.getCount());
+            } else if (in instanceof BucketInputStream) {
+                len = ((BucketInputStream) in).size();
+                conn.setFixedLengthStreamingMode(len);
+                OutputStream out = conn.getOutputStream();
+                writeLogEntries(in, out);
+                out.close();
+            } else {
+                BufferedOutputStream out = new BufferedOutputStream(conn.getOutputStream());
+                len = writeLogEntries(in, out);
+                out.flush();
+                out.close();
+            }
             sentBytes.addAndGet(len);
 
-            out.flush();
-            out.close();
-
             int responseCode = conn.getResponseCode();
-            String response = super.readResponseBody(conn.getInputStream());
+            // error responses are only readable from the error stream
+            InputStream responseIn = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream() : conn.getErrorStream();
+            String response = responseIn == null ? "" : super.readResponseBody(responseIn);
             switch (responseCode) {
                 case HttpURLConnection.HTTP_OK:
                 case HttpURLConnection.HTTP_ACCEPTED:
@@ -363,22 +1353,116 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
                 default:
                     sendExceptionCount.incrementAndGet();
                     addError("LogglyAppender server-side exception: " + responseCode + ": " + response);
+                    markFailed(in, isRetryable(responseCode));
             }
-            // force url connection recycling
-            try {
-                conn.getInputStream().close();
-                conn.disconnect();
-            } catch (Exception e) {
-                // swallow exception
-            }
+            // keep the connection alive for the next post
+            transport.releaseConnection(conn, true);
         } catch (Exception e) {
+            if (conn != null) {
+                transport.releaseConnection(conn, false);
+            }
             sendExceptionCount.incrementAndGet();
             addError("LogglyAppender client-side exception", e);
+            markFailed(in, true);
         } finally {
-            sendDurationInNanos.addAndGet(System.nanoTime() - nanosBefore);
+            recordSendDuration(System.nanoTime() - nanosBefore);
+        }
+    }
+
+    /**
+     * Records the duration of a post, until its response is received.
+     */
+    protected void recordSendDuration(long durationInNanos) {
+        sendDurationInNanos.addAndGet(durationInNanos);
+        sendLatencyInMicrosHistogram.record(TimeUnit.NANOSECONDS.toMicros(durationInNanos));
+    }
+
+    private void recordRequest(Bucket bucket) {
+        sentRequests.mark(1);
+        sentBytesMeter.mark(bucket.size());
+    }
+
+    /**
+     * Records the time from the append of the oldest and newest events of the bucket to the acknowledgement of the
+     * post, unknown for the buckets read back from disk.
+     */
+    private void recordDelivered(Bucket bucket) {
+        long firstEventNanos = bucket.getFirstEventNanos();
+        if (firstEventNanos == 0) {
+            return;
+        }
+        long nowNanos = System.nanoTime();
+        oldestEventDeliveryLatencyInMillisHistogram.record(TimeUnit.NANOSECONDS.toMillis(nowNanos - firstEventNanos));
+        newestEventDeliveryLatencyInMillisHistogram.record(TimeUnit.NANOSECONDS.toMillis(nowNanos - bucket.getLastEventNanos()));
+    }
+
+    /**
+     * Invoked with the lock of the stripe held, recording is lock-free.
+     */
+    private void recordRolledBucket(Bucket bucket) {
+        bucketSizeInBytesHistogram.record(bucket.size());
+        long firstEventNanos = bucket.getFirstEventNanos();
+        if (firstEventNanos != 0) {
+            bucketFillTimeInMillisHistogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstEventNanos));
+        }
+    }
+
+    /**
+     * Writes the log entries, without copying the bucket of a {@link BucketInputStream}.
+     *
+     * @return the number of bytes written
+     */
+    private long writeLogEntries(InputStream in, OutputStream out) throws IOException {
+        if (in instanceof BucketInputStream) {
+            BucketInputStream bucketIn = (BucketInputStream) in;
+            bucketIn.writeTo(out);
+            return bucketIn.size();
+        }
+        return IoUtils.copy(in, out);
+    }
+
+    /**
+     * Too many requests and server errors are transient, other client errors would fail again.
+     */
+    protected static boolean isRetryable(int responseCode) {
+        return responseCode == 429 || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /**
+     * Reports the failure of a send to the retry policy, when the stream is the one given by
+     * {@link #processFilledBuckets()} and its delivery has not been {@linkplain #deferDelivery(InputStream) deferred}.
+     *
+     * @param in the stream given to {@link #processLogEntries(InputStream)}
+     * @param retryable {@code true} if the failure is transient and the logs should be sent again
+     */
+    protected static void markFailed(InputStream in, boolean retryable) {
+        if (in instanceof BucketDelivery) {
+            ((BucketDelivery) in).failed(retryable);
         }
     }
 
+    /**
+     * Max number of filled buckets held at once by the senders, which the off-heap buckets must include. Designed for
+     * extension by the senders {@linkplain #deferDelivery(InputStream) deferring} deliveries.
+     *
+     * @return the number of sender threads
+     */
+    protected int getConsumedBucketCount() {
+        return senderThreads;
+    }
+
+    protected boolean isGzipCompression() {
+        return COMPRESSION_GZIP.equalsIgnoreCase(compression);
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
     public int getFlushIntervalInSeconds() {
         return flushIntervalInSeconds;
     }
@@ -393,80 +1477,849 @@ public class LogglyBatchAppender<E> extends AbstractLogglyAppender<E> implements
     }
 
     @Override
-    public long getSendDurationInNanos() {
-        return sendDurationInNanos.get();
+    public int getHistogramWindowInSeconds() {
+        return RollingHistogram.WINDOW_IN_SECONDS;
     }
 
     @Override
-    public int getSendSuccessCount() {
-        return sendSuccessCount.get();
+    public long getSendLatency50thPercentileInMicros() {
+        return sendLatencyInMicrosHistogram.getValueAtPercentile(50);
     }
 
     @Override
-    public int getSendExceptionCount() {
-        return sendExceptionCount.get();
+    public long getSendLatency99thPercentileInMicros() {
+        return sendLatencyInMicrosHistogram.getValueAtPercentile(99);
     }
 
     @Override
-    public int getDiscardedBucketsCount() {
-        return outputStream.getDiscardedBucketCount();
+    public long getSendLatency999thPercentileInMicros() {
+        return sendLatencyInMicrosHistogram.getValueAtPercentile(99.9);
     }
 
     @Override
-    public long getCurrentLogEntriesBufferSizeInBytes() {
-        return outputStream.getCurrentOutputStreamSize();
+    public long getSendLatencyMaxInMicros() {
+        return sendLatencyInMicrosHistogram.getMax();
     }
 
-    public void setDebug(boolean debug) {
-        this.debug = debug;
+    @Override
+    public long getBucketFillTime50thPercentileInMillis() {
+        return bucketFillTimeInMillisHistogram.getValueAtPercentile(50);
     }
 
-    public boolean isDebug() {
-        return debug;
+    @Override
+    public long getBucketFillTime99thPercentileInMillis() {
+        return bucketFillTimeInMillisHistogram.getValueAtPercentile(99);
     }
 
-    public void setJmxMonitoring(boolean jmxMonitoring) {
-        this.jmxMonitoring = jmxMonitoring;
+    @Override
+    public long getBucketSize50thPercentileInBytes() {
+        return bucketSizeInBytesHistogram.getValueAtPercentile(50);
     }
 
-    public void setMbeanServer(MBeanServer mbeanServer) {
-        this.mbeanServer = mbeanServer;
+    @Override
+    public long getBucketSize99thPercentileInBytes() {
+        return bucketSizeInBytesHistogram.getValueAtPercentile(99);
     }
 
-    public void setMaxNumberOfBuckets(int maxNumberOfBuckets) {
-        this.maxNumberOfBuckets = maxNumberOfBuckets;
+    @Override
+    public long getDeliveryLatency50thPercentileInMillis() {
+        return oldestEventDeliveryLatencyInMillisHistogram.getValueAtPercentile(50);
     }
 
-    public void setMaxBucketSizeInKilobytes(int maxBucketSizeInKilobytes) {
-        this.maxBucketSizeInKilobytes = maxBucketSizeInKilobytes;
+    @Override
+    public long getDeliveryLatency99thPercentileInMillis() {
+        return oldestEventDeliveryLatencyInMillisHistogram.getValueAtPercentile(99);
     }
 
-    /**
-     * set method for Logback to allow Connection Read Timeout to be exposed
-     */
-    public void setConnReadTimeoutSeconds(int connReadTimeoutSeconds) {
-        this.connReadTimeoutSeconds = connReadTimeoutSeconds;
+    @Override
+    public long getDeliveryLatencyMaxInMillis() {
+        return oldestEventDeliveryLatencyInMillisHistogram.getMax();
     }
 
-    private String getDebugInfo() {
-        return "{" +
-                "sendDurationInMillis=" + TimeUnit.MILLISECONDS.convert(sendDurationInNanos.get(), TimeUnit.NANOSECONDS) +
-                ", sendSuccessCount=" + sendSuccessCount +
-                ", sendExceptionCount=" + sendExceptionCount +
-                ", sentBytes=" + sentBytes +
-                ", discardedBucketsCount=" + getDiscardedBucketsCount() +
-                ", currentLogEntriesBufferSizeInBytes=" + getCurrentLogEntriesBufferSizeInBytes() +
-                '}';
+    @Override
+    public long getNewestEventDeliveryLatency50thPercentileInMillis() {
+        return newestEventDeliveryLatencyInMillisHistogram.getValueAtPercentile(50);
     }
 
-    public class LogglyExporter implements Runnable {
-        @Override
-        public void run() {
-            try {
-                processLogEntries();
-            } catch (Exception e) {
-                addWarn("Exception processing log entries", e);
+    @Override
+    public long getNewestEventDeliveryLatency99thPercentileInMillis() {
+        return newestEventDeliveryLatencyInMillisHistogram.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getOldestUnsentEventAgeInMillis() {
+        long oldest = 0;
+        for (BucketDelivery delivery : inFlightDeliveries) {
+            oldest = oldest(oldest, delivery.getBucket().getFirstEventNanos());
+        }
+        oldest = oldest(oldest, outputStream.getOldestEventNanos());
+        DiscardingRollingOutputStream priorityOutputStream = this.priorityOutputStream;
+        if (priorityOutputStream != null) {
+            oldest = oldest(oldest, priorityOutputStream.getOldestEventNanos());
+        }
+        return oldest == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+
+    private static long oldest(long nanos, long otherNanos) {
+        if (nanos == 0) {
+            return otherNanos;
+        }
+        return otherNanos == 0 || otherNanos - nanos > 0 ? nanos : otherNanos;
+    }
+
+    @Override
+    public long getAppendedEventsCount() {
+        return appendedEvents.getCount();
+    }
+
+    @Override
+    public double getAppendedEventsOneMinuteRate() {
+        return appendedEvents.getOneMinuteRate();
+    }
+
+    @Override
+    public double getAppendedEventsFiveMinutesRate() {
+        return appendedEvents.getFiveMinutesRate();
+    }
+
+    @Override
+    public long getSentRequestsCount() {
+        return sentRequests.getCount();
+    }
+
+    @Override
+    public double getSentRequestsOneMinuteRate() {
+        return sentRequests.getOneMinuteRate();
+    }
+
+    @Override
+    public double getSentRequestsFiveMinutesRate() {
+        return sentRequests.getFiveMinutesRate();
+    }
+
+    @Override
+    public double getSentBytesOneMinuteRate() {
+        return sentBytesMeter.getOneMinuteRate();
+    }
+
+    @Override
+    public double getSentBytesFiveMinutesRate() {
+        return sentBytesMeter.getFiveMinutesRate();
+    }
+
+    @Override
+    public long getSentBytesBeforeCompression() {
+        return sentBytesBeforeCompression.get();
+    }
+
+    @Override
+    public long getSentBytesAfterCompression() {
+        return sentBytesAfterCompression.get();
+    }
+
+    @Override
+    public long getSendDurationInNanos() {
+        return sendDurationInNanos.get();
+    }
+
+    @Override
+    public int getSendSuccessCount() {
+        return sendSuccessCount.get();
+    }
+
+    @Override
+    public int getSendExceptionCount() {
+        return sendExceptionCount.get();
+    }
+
+    @Override
+    public int getSendRetryCount() {
+        return sendRetryCount.get();
+    }
+
+    @Override
+    public int getFailedBucketsCount() {
+        return failedBucketsCount.get();
+    }
+
+    @Override
+    public int getConsecutiveSendFailureCount() {
+        return consecutiveSendFailureCount.get();
+    }
+
+    @Override
+    public long getCurrentBackoffInMillis() {
+        long remainingNanos = backoffUntilNanos - System.nanoTime();
+        return backoffUntilNanos == 0 || remainingNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+    }
+
+    @Override
+    public long getSecureConnectionCount() {
+        return transport == null ? 0 : transport.getSecureConnectionCount();
+    }
+
+    @Override
+    public long getHandshakeCount() {
+        return transport == null ? 0 : transport.getHandshakeCount();
+    }
+
+    @Override
+    public long getNewConnectionCount() {
+        return transport == null ? 0 : transport.getNewConnectionCount();
+    }
+
+    @Override
+    public long getReusedConnectionCount() {
+        return transport == null ? 0 : transport.getReusedConnectionCount();
+    }
+
+    @Override
+    public long getAsyncBufferedEventsCount() {
+        RingBuffer<E> ringBuffer = this.ringBuffer;
+        return ringBuffer == null ? 0 : ringBuffer.size();
+    }
+
+    @Override
+    public long getAsyncDiscardedEventsCount() {
+        return asyncDiscardedEventsCount.get();
+    }
+
+    @Override
+    public long getAsyncRunInCallerEventsCount() {
+        return asyncRunInCallerEventsCount.get();
+    }
+
+    @Override
+    public double getOverloadSamplingRatio() {
+        return overloadSamplingRatio;
+    }
+
+    @Override
+    public long getDedupSuppressedEventsCount() {
+        EventDeduplicator deduplicator = this.deduplicator;
+        return deduplicator == null ? 0 : deduplicator.getSuppressedEventCount();
+    }
+
+    @Override
+    public long getDedupSummaryEventsCount() {
+        EventDeduplicator deduplicator = this.deduplicator;
+        return deduplicator == null ? 0 : deduplicator.getSummaryEventCount();
+    }
+
+    @Override
+    public boolean isThrottled() {
+        long throttledUntilNanos = this.throttledUntilNanos;
+        return throttledUntilNanos != 0 && throttledUntilNanos - System.nanoTime() > 0;
+    }
+
+    @Override
+    public int getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    @Override
+    public long getAvailableSendBytesTokens() {
+        SendRateLimiter sendRateLimiter = this.sendRateLimiter;
+        return sendRateLimiter == null ? -1 : sendRateLimiter.getAvailableBytes();
+    }
+
+    @Override
+    public long getAvailableSendRequestsTokens() {
+        SendRateLimiter sendRateLimiter = this.sendRateLimiter;
+        return sendRateLimiter == null ? -1 : sendRateLimiter.getAvailableRequests();
+    }
+
+    @Override
+    public long getCurrentBucketSizeInBytes() {
+        return outputStream.getMaxBucketSizeInBytes();
+    }
+
+    @Override
+    public long getCurrentLingerMillis() {
+        return currentLingerMillis;
+    }
+
+    @Override
+    public int getDiscardedBucketsCount() {
+        return outputStream.getDiscardedBucketCount();
+    }
+
+    @Override
+    public long getDroppedEventsCount() {
+        return outputStream.getDroppedEventCount();
+    }
+
+    @Override
+    public long getDiscardedNewestEventsCount() {
+        return outputStream.getDroppedEventCount(OverflowPolicy.DISCARD_NEWEST);
+    }
+
+    @Override
+    public long getDiscardedOldestEventsCount() {
+        return outputStream.getDroppedEventCount(OverflowPolicy.DISCARD_OLDEST);
+    }
+
+    @Override
+    public long getBlockTimeoutDroppedEventsCount() {
+        return outputStream.getDroppedEventCount(OverflowPolicy.BLOCK);
+    }
+
+    @Override
+    public long getSampledOutEventsCount() {
+        return outputStream.getDroppedEventCount(OverflowPolicy.SAMPLE);
+    }
+
+    @Override
+    public int getPriorityDiscardedBucketsCount() {
+        return priorityOutputStream == null ? 0 : priorityOutputStream.getDiscardedBucketCount();
+    }
+
+    @Override
+    public long getPriorityLogEntriesBufferSizeInBytes() {
+        return priorityOutputStream == null ? 0 : priorityOutputStream.getCurrentOutputStreamSize();
+    }
+
+    @Override
+    public long getTruncatedEventsCount() {
+        long truncatedEventsCount = outputStream.getTruncatedEventCount();
+        if (priorityOutputStream != null) {
+            truncatedEventsCount += priorityOutputStream.getTruncatedEventCount();
+        }
+        return truncatedEventsCount;
+    }
+
+    @Override
+    public long getCurrentLogEntriesBufferSizeInBytes() {
+        return outputStream.getCurrentOutputStreamSize();
+    }
+
+    @Override
+    public int getSpilledBucketsCount() {
+        return outputStream.getSpilledBucketCount();
+    }
+
+    @Override
+    public long getSpillSizeInBytes() {
+        return outputStream.getSpillSizeInBytes();
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public void setJmxMonitoring(boolean jmxMonitoring) {
+        this.jmxMonitoring = jmxMonitoring;
+    }
+
+    public void setMbeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public void setMaxNumberOfBuckets(int maxNumberOfBuckets) {
+        this.maxNumberOfBuckets = maxNumberOfBuckets;
+    }
+
+    public void setMaxBucketSizeInKilobytes(int maxBucketSizeInKilobytes) {
+        this.maxBucketSizeInKilobytes = maxBucketSizeInKilobytes;
+    }
+
+    public int getMaxEventSizeBytes() {
+        return maxEventSizeBytes;
+    }
+
+    public void setMaxEventSizeBytes(int maxEventSizeBytes) {
+        this.maxEventSizeBytes = maxEventSizeBytes;
+    }
+
+    public int getMaxRequestSizeBytes() {
+        return maxRequestSizeBytes;
+    }
+
+    public void setMaxRequestSizeBytes(int maxRequestSizeBytes) {
+        this.maxRequestSizeBytes = maxRequestSizeBytes;
+    }
+
+    public int getWriteStripes() {
+        return writeStripes;
+    }
+
+    public void setWriteStripes(int writeStripes) {
+        this.writeStripes = writeStripes;
+    }
+
+    public boolean isOffHeapBuckets() {
+        return offHeapBuckets;
+    }
+
+    public void setOffHeapBuckets(boolean offHeapBuckets) {
+        this.offHeapBuckets = offHeapBuckets;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getSpillMaxSizeInMegabytes() {
+        return spillMaxSizeInMegabytes;
+    }
+
+    public void setSpillMaxSizeInMegabytes(int spillMaxSizeInMegabytes) {
+        this.spillMaxSizeInMegabytes = spillMaxSizeInMegabytes;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getOverflowBlockTimeoutMillis() {
+        return overflowBlockTimeoutMillis;
+    }
+
+    public void setOverflowBlockTimeoutMillis(long overflowBlockTimeoutMillis) {
+        this.overflowBlockTimeoutMillis = overflowBlockTimeoutMillis;
+    }
+
+    public double getOverflowSampleRate() {
+        return overflowSampleRate;
+    }
+
+    public void setOverflowSampleRate(double overflowSampleRate) {
+        this.overflowSampleRate = overflowSampleRate;
+    }
+
+    public String getPriorityLevel() {
+        return priorityLevel == null ? null : priorityLevel.toString();
+    }
+
+    public void setPriorityLevel(String priorityLevel) {
+        this.priorityLevel = priorityLevel == null || priorityLevel.trim().isEmpty() ? null : Level.toLevel(priorityLevel.trim(), null);
+        if (this.priorityLevel == null && priorityLevel != null && !priorityLevel.trim().isEmpty()) {
+            addWarn("Unknown priorityLevel '" + priorityLevel + "', priority buffer disabled");
+        }
+    }
+
+    public int getPriorityBufferSizeInKilobytes() {
+        return priorityBufferSizeInKilobytes;
+    }
+
+    public void setPriorityBufferSizeInKilobytes(int priorityBufferSizeInKilobytes) {
+        this.priorityBufferSizeInKilobytes = priorityBufferSizeInKilobytes;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public long getMaxSendBytesPerSecond() {
+        return maxSendBytesPerSecond;
+    }
+
+    public void setMaxSendBytesPerSecond(long maxSendBytesPerSecond) {
+        this.maxSendBytesPerSecond = maxSendBytesPerSecond;
+    }
+
+    public long getMaxSendRequestsPerSecond() {
+        return maxSendRequestsPerSecond;
+    }
+
+    public void setMaxSendRequestsPerSecond(long maxSendRequestsPerSecond) {
+        this.maxSendRequestsPerSecond = maxSendRequestsPerSecond;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getAdaptiveTargetSendLatencyMillis() {
+        return adaptiveTargetSendLatencyMillis;
+    }
+
+    public void setAdaptiveTargetSendLatencyMillis(long adaptiveTargetSendLatencyMillis) {
+        this.adaptiveTargetSendLatencyMillis = adaptiveTargetSendLatencyMillis;
+    }
+
+    public int getAdaptiveMinBucketSizeInKilobytes() {
+        return adaptiveMinBucketSizeInKilobytes;
+    }
+
+    public void setAdaptiveMinBucketSizeInKilobytes(int adaptiveMinBucketSizeInKilobytes) {
+        this.adaptiveMinBucketSizeInKilobytes = adaptiveMinBucketSizeInKilobytes;
+    }
+
+    public long getAdaptiveMinLingerMillis() {
+        return adaptiveMinLingerMillis;
+    }
+
+    public void setAdaptiveMinLingerMillis(long adaptiveMinLingerMillis) {
+        this.adaptiveMinLingerMillis = adaptiveMinLingerMillis;
+    }
+
+    public double getOverloadHighWaterMark() {
+        return overloadHighWaterMark;
+    }
+
+    public void setOverloadHighWaterMark(double overloadHighWaterMark) {
+        this.overloadHighWaterMark = overloadHighWaterMark;
+    }
+
+    public double getOverloadMinSamplingRatio() {
+        return overloadMinSamplingRatio;
+    }
+
+    public void setOverloadMinSamplingRatio(double overloadMinSamplingRatio) {
+        this.overloadMinSamplingRatio = overloadMinSamplingRatio;
+    }
+
+    public String getOverloadSamplingLevel() {
+        return overloadSamplingLevel.toString();
+    }
+
+    public void setOverloadSamplingLevel(String overloadSamplingLevel) {
+        Level level = overloadSamplingLevel == null ? null : Level.toLevel(overloadSamplingLevel.trim(), null);
+        if (level == null) {
+            addWarn("Unknown overloadSamplingLevel '" + overloadSamplingLevel + "', using " + this.overloadSamplingLevel);
+        } else {
+            this.overloadSamplingLevel = level;
+        }
+    }
+
+    public long getDedupWindowMillis() {
+        return dedupWindowMillis;
+    }
+
+    public void setDedupWindowMillis(long dedupWindowMillis) {
+        this.dedupWindowMillis = dedupWindowMillis;
+    }
+
+    public int getDedupTableSize() {
+        return dedupTableSize;
+    }
+
+    public void setDedupTableSize(int dedupTableSize) {
+        this.dedupTableSize = dedupTableSize;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getAsyncBufferSize() {
+        return asyncBufferSize;
+    }
+
+    public void setAsyncBufferSize(int asyncBufferSize) {
+        this.asyncBufferSize = asyncBufferSize;
+    }
+
+    public int getAsyncWorkers() {
+        return asyncWorkers;
+    }
+
+    public void setAsyncWorkers(int asyncWorkers) {
+        this.asyncWorkers = asyncWorkers;
+    }
+
+    public String getAsyncWaitStrategy() {
+        return asyncWaitStrategy;
+    }
+
+    public void setAsyncWaitStrategy(String asyncWaitStrategy) {
+        this.asyncWaitStrategy = asyncWaitStrategy;
+    }
+
+    public String getAsyncFullPolicy() {
+        return asyncFullPolicy;
+    }
+
+    public void setAsyncFullPolicy(String asyncFullPolicy) {
+        this.asyncFullPolicy = asyncFullPolicy;
+    }
+
+    public boolean isAsyncIncludeCallerData() {
+        return asyncIncludeCallerData;
+    }
+
+    public void setAsyncIncludeCallerData(boolean asyncIncludeCallerData) {
+        this.asyncIncludeCallerData = asyncIncludeCallerData;
+    }
+
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+
+    public void setSenderThreads(int senderThreads) {
+        this.senderThreads = senderThreads;
+    }
+
+    public int getMaxSendAttempts() {
+        return maxSendAttempts;
+    }
+
+    public void setMaxSendAttempts(int maxSendAttempts) {
+        this.maxSendAttempts = maxSendAttempts;
+    }
+
+    /**
+     * set method for Logback to allow Connection Read Timeout to be exposed
+     */
+    public void setConnReadTimeoutSeconds(int connReadTimeoutSeconds) {
+        this.connReadTimeoutSeconds = connReadTimeoutSeconds;
+    }
+
+    private String getDebugInfo() {
+        return "{" +
+                "sendDurationInMillis=" + TimeUnit.MILLISECONDS.convert(sendDurationInNanos.get(), TimeUnit.NANOSECONDS) +
+                ", sendSuccessCount=" + sendSuccessCount +
+                ", sendExceptionCount=" + sendExceptionCount +
+                ", sendRetryCount=" + sendRetryCount +
+                ", failedBucketsCount=" + failedBucketsCount +
+                ", consecutiveSendFailureCount=" + consecutiveSendFailureCount +
+                ", sentBytes=" + sentBytes +
+                ", secureConnectionCount=" + getSecureConnectionCount() +
+                ", handshakeCount=" + getHandshakeCount() +
+                ", newConnectionCount=" + getNewConnectionCount() +
+                ", reusedConnectionCount=" + getReusedConnectionCount() +
+                ", sentBytesBeforeCompression=" + sentBytesBeforeCompression +
+                ", sentBytesAfterCompression=" + sentBytesAfterCompression +
+                ", discardedBucketsCount=" + getDiscardedBucketsCount() +
+                ", droppedEventsCount=" + getDroppedEventsCount() +
+                ", truncatedEventsCount=" + getTruncatedEventsCount() +
+                ", priorityDiscardedBucketsCount=" + getPriorityDiscardedBucketsCount() +
+                ", currentLogEntriesBufferSizeInBytes=" + getCurrentLogEntriesBufferSizeInBytes() +
+                ", spilledBucketsCount=" + getSpilledBucketsCount() +
+                ", spillSizeInBytes=" + getSpillSizeInBytes() +
+                ", currentBucketSizeInBytes=" + getCurrentBucketSizeInBytes() +
+                ", currentLingerMillis=" + currentLingerMillis +
+                '}';
+    }
+
+    /**
+     * Wakes up a sender thread to send the filled buckets without waiting for the next flush. Invoked when buckets
+     * are rolled, at most one wake up is pending at a time.
+     */
+    private void scheduleFilledBucketsExport() {
+        ScheduledExecutorService scheduledExecutor = this.scheduledExecutor;
+        if (scheduledExecutor != null && filledBucketsExportScheduled.compareAndSet(false, true)) {
+            try {
+                scheduledExecutor.execute(new FilledBucketsExporter());
+            } catch (RejectedExecutionException e) {
+                // appender is stopping, stop() sends the remaining buckets
+                filledBucketsExportScheduled.set(false);
+            }
+        }
+    }
+
+    private long getEffectiveLingerMillis() {
+        return lingerMillis > 0 ? lingerMillis : TimeUnit.SECONDS.toMillis(flushIntervalInSeconds);
+    }
+
+    /**
+     * Bucket given to {@link #processLogEntries(InputStream)}, recording the outcome of the send for the retry policy.
+     */
+    private static class BucketDelivery extends BucketInputStream {
+        // stream of the filled bucket, null for spilled buckets
+        private final DiscardingRollingOutputStream stream;
+        private volatile boolean failed;
+        private volatile boolean retryable;
+        private volatile boolean deferred;
+
+        BucketDelivery(Bucket bucket, DiscardingRollingOutputStream stream) {
+            super(bucket);
+            this.stream = stream;
+        }
+
+        void failed(boolean retryable) {
+            this.failed = true;
+            this.retryable = retryable;
+        }
+
+        boolean isFailed() {
+            return failed;
+        }
+
+        boolean isRetryable() {
+            return retryable;
+        }
+
+        boolean isDeferred() {
+            return deferred;
+        }
+    }
+
+    private class FilledBucketsExporter implements Runnable {
+        @Override
+        public void run() {
+            filledBucketsExportScheduled.set(false);
+            try {
+                processFilledBuckets();
+            } catch (Exception e) {
+                addWarn("Exception processing log entries", e);
+            }
+        }
+    }
+
+    public class LogglyExporter implements Runnable {
+        @Override
+        public void run() {
+            try {
+                processLogEntries();
+            } catch (Exception e) {
+                addWarn("Exception processing log entries", e);
+            }
+        }
+    }
+
+    /**
+     * Periodic export, scheduled again after each run with the current linger, which may change in adaptive mode.
+     */
+    private class RescheduledLogglyExporter extends LogglyExporter {
+        @Override
+        public void run() {
+            super.run();
+            ScheduledExecutorService scheduledExecutor = LogglyBatchAppender.this.scheduledExecutor;
+            try {
+                scheduledExecutor.schedule(this, currentLingerMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // appender is stopping
+            }
+        }
+    }
+
+    /**
+     * Lays out the events of the ring buffer until the appender stops and the ring buffer is drained.
+     */
+    private class AsyncWorker implements Runnable {
+        private final RingBuffer<E> ringBuffer;
+
+        AsyncWorker(RingBuffer<E> ringBuffer) {
+            this.ringBuffer = ringBuffer;
+        }
+
+        @Override
+        public void run() {
+            int attempt = 0;
+            while (true) {
+                E eventObject = ringBuffer.poll();
+                if (eventObject == null) {
+                    if (asyncStopping) {
+                        return;
+                    }
+                    attempt = waitStrategy.idle(attempt);
+                    continue;
+                }
+                attempt = 0;
+                try {
+                    process(eventObject);
+                } catch (Exception e) {
+                    addWarn("Exception buffering log event", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the overload sampling ratio halfway towards the target of the current buffer size at each period, so
+     * that it follows the load without oscillating.
+     */
+    private class OverloadController implements Runnable {
+        static final long PERIOD_IN_MILLIS = 250;
+
+        @Override
+        public void run() {
+            double capacity = (double) maxNumberOfBuckets * maxBucketSizeInKilobytes * 1024;
+            double fill = Math.min(1, getCurrentLogEntriesBufferSizeInBytes() / capacity);
+            double minRatio = Math.max(0, Math.min(1, overloadMinSamplingRatio));
+            double target = fill <= overloadHighWaterMark
+                    ? 1
+                    : 1 - (1 - minRatio) * (fill - overloadHighWaterMark) / (1 - overloadHighWaterMark);
+            double ratio = overloadSamplingRatio + (target - overloadSamplingRatio) / 2;
+            // back to no sampling once close enough
+            overloadSamplingRatio = target == 1 && ratio > 0.99 ? 1 : ratio;
+        }
+    }
+
+    /**
+     * AIMD tuning of the roll size of the buckets and of the linger from the sends of the last period.
+     */
+    private class AdaptiveController implements Runnable {
+        static final long PERIOD_IN_MILLIS = 1000;
+
+        private long lastSendCount;
+        private int lastSendExceptionCount;
+        private long lastSendDurationInNanos;
+        private long lastWrittenBytes;
+
+        @Override
+        public void run() {
+            long sendCount = (long) sendSuccessCount.get() + sendExceptionCount.get();
+            int sendExceptionCount = LogglyBatchAppender.this.sendExceptionCount.get();
+            long sendDurationInNanos = LogglyBatchAppender.this.sendDurationInNanos.get();
+            // the sent bytes only measure the drain rate, which is capped by the congested endpoint
+            long writtenBytes = outputStream.getWrittenBytes();
+
+            long sends = sendCount - lastSendCount;
+            if (sends > 0) {
+                long averageSendDurationInMillis = TimeUnit.NANOSECONDS.toMillis((sendDurationInNanos - lastSendDurationInNanos) / sends);
+                boolean congested = sendExceptionCount != lastSendExceptionCount
+                        || averageSendDurationInMillis > adaptiveTargetSendLatencyMillis;
+                adapt(congested, (writtenBytes - lastWrittenBytes) * 1000 / PERIOD_IN_MILLIS);
+            }
+
+            lastSendCount = sendCount;
+            lastSendExceptionCount = sendExceptionCount;
+            lastSendDurationInNanos = sendDurationInNanos;
+            lastWrittenBytes = writtenBytes;
+        }
+
+        private void adapt(boolean congested, long fillRateInBytesPerSecond) {
+            long minBucketSize = adaptiveMinBucketSizeInKilobytes * 1024L;
+            long bucketSize = outputStream.getMaxBucketSizeInBytes();
+            long maxLinger = getEffectiveLingerMillis();
+            long linger = currentLingerMillis;
+            if (congested) {
+                bucketSize = Math.max(minBucketSize, bucketSize / 2);
+                linger = Math.min(maxLinger, linger * 2);
+            } else {
+                // larger posts only help if the buckets fill up before the linger
+                if (fillRateInBytesPerSecond * linger / 1000 >= bucketSize) {
+                    bucketSize = bucketSize + minBucketSize;
+                }
+                linger = Math.max(adaptiveMinLingerMillis, linger - adaptiveMinLingerMillis);
             }
+            outputStream.setMaxBucketSizeInBytes(bucketSize);
+            currentLingerMillis = Math.max(1, linger);
         }
     }
 
@@ -30,10 +30,144 @@ public interface LogglyBatchAppenderMBean {
     long getSentBytes();
 
     /**
-     * Duration spent sending logs to Loggly.
+     * Number of bytes of the compressed posts sent to Loggly, before compression.
+     */
+    long getSentBytesBeforeCompression();
+
+    /**
+     * Number of bytes of the compressed posts sent to Loggly, after compression.
+     */
+    long getSentBytesAfterCompression();
+
+    /**
+     * Duration spent sending logs to Loggly, summed over the sender threads.
      */
     long getSendDurationInNanos();
 
+    /**
+     * Length in seconds of the windows of the percentiles and maxima below, which cover the values recorded over the
+     * last one to two windows.
+     */
+    int getHistogramWindowInSeconds();
+
+    /**
+     * Median duration of the posts to Loggly, over the histogram window.
+     */
+    long getSendLatency50thPercentileInMicros();
+
+    /**
+     * 99th percentile of the duration of the posts to Loggly, over the histogram window.
+     */
+    long getSendLatency99thPercentileInMicros();
+
+    /**
+     * 99.9th percentile of the duration of the posts to Loggly, over the histogram window.
+     */
+    long getSendLatency999thPercentileInMicros();
+
+    /**
+     * Longest post to Loggly, over the histogram window.
+     */
+    long getSendLatencyMaxInMicros();
+
+    /**
+     * Median time between the first log entry written in a bucket and its roll, over the histogram window.
+     */
+    long getBucketFillTime50thPercentileInMillis();
+
+    /**
+     * 99th percentile of the time between the first log entry written in a bucket and its roll, over the histogram
+     * window.
+     */
+    long getBucketFillTime99thPercentileInMillis();
+
+    /**
+     * Median size of the rolled buckets, over the histogram window.
+     */
+    long getBucketSize50thPercentileInBytes();
+
+    /**
+     * 99th percentile of the size of the rolled buckets, over the histogram window.
+     */
+    long getBucketSize99thPercentileInBytes();
+
+    /**
+     * Median time from the append of the oldest event of a post to its acknowledgement by Loggly, over the histogram
+     * window. Posts of buckets read back from disk are not accounted for.
+     */
+    long getDeliveryLatency50thPercentileInMillis();
+
+    /**
+     * 99th percentile of the time from the append of the oldest event of a post to its acknowledgement by Loggly,
+     * over the histogram window.
+     */
+    long getDeliveryLatency99thPercentileInMillis();
+
+    /**
+     * Longest time from the append of the oldest event of a post to its acknowledgement by Loggly, over the histogram
+     * window.
+     */
+    long getDeliveryLatencyMaxInMillis();
+
+    /**
+     * Median time from the append of the newest event of a post to its acknowledgement by Loggly, over the histogram
+     * window.
+     */
+    long getNewestEventDeliveryLatency50thPercentileInMillis();
+
+    /**
+     * 99th percentile of the time from the append of the newest event of a post to its acknowledgement by Loggly,
+     * over the histogram window.
+     */
+    long getNewestEventDeliveryLatency99thPercentileInMillis();
+
+    /**
+     * Time since the append of the oldest event buffered in memory or being sent, <code>0</code> if none. A growing
+     * age reveals a backlog before buckets get discarded.
+     */
+    long getOldestUnsentEventAgeInMillis();
+
+    /**
+     * Number of log events laid out and buffered, after sampling and deduplication.
+     */
+    long getAppendedEventsCount();
+
+    /**
+     * Log events buffered per second, averaged over the last minute.
+     */
+    double getAppendedEventsOneMinuteRate();
+
+    /**
+     * Log events buffered per second, averaged over the last 5 minutes.
+     */
+    double getAppendedEventsFiveMinutesRate();
+
+    /**
+     * Number of posts to Loggly, including the retries and the failed ones. Unlike the <code>int</code> counters, it
+     * does not wrap around.
+     */
+    long getSentRequestsCount();
+
+    /**
+     * Posts to Loggly per second, averaged over the last minute.
+     */
+    double getSentRequestsOneMinuteRate();
+
+    /**
+     * Posts to Loggly per second, averaged over the last 5 minutes.
+     */
+    double getSentRequestsFiveMinutesRate();
+
+    /**
+     * Bytes posted to Loggly per second before compression, averaged over the last minute.
+     */
+    double getSentBytesOneMinuteRate();
+
+    /**
+     * Bytes posted to Loggly per second before compression, averaged over the last 5 minutes.
+     */
+    double getSentBytesFiveMinutesRate();
+
     /**
      * Number of successful invocations to Loggly's send logs API.
      */
@@ -44,16 +178,178 @@ public interface LogglyBatchAppenderMBean {
      */
     int getSendExceptionCount();
 
+    /**
+     * Number of failed sends that have been retried.
+     */
+    int getSendRetryCount();
+
+    /**
+     * Number of buckets that could not be sent, after the last attempt or on a non retryable error.
+     */
+    int getFailedBucketsCount();
+
+    /**
+     * Number of retryable failures since the last successful send.
+     */
+    int getConsecutiveSendFailureCount();
+
+    /**
+     * Remaining time before sending again after a failure, 0 if not backing off.
+     */
+    long getCurrentBackoffInMillis();
+
+    /**
+     * Number of posts sent over TLS, on new or reused connections.
+     */
+    long getSecureConnectionCount();
+
+    /**
+     * Number of TLS handshakes. Posts sent over TLS without a handshake reused a kept alive connection.
+     */
+    long getHandshakeCount();
+
+    /**
+     * Number of posts that opened a new connection. Only posts over TLS are counted by the default transport, which
+     * can't tell whether a plain HTTP post reused a connection.
+     */
+    long getNewConnectionCount();
+
+    /**
+     * Number of posts that reused a kept alive connection. Only posts over TLS are counted by the default transport,
+     * which can't tell whether a plain HTTP post reused a connection.
+     */
+    long getReusedConnectionCount();
+
+    /**
+     * Number of log events dropped by the <code>samplingRules</code> or the overload sampling.
+     */
+    long getSamplingDroppedEventsCount();
+
+    /**
+     * Number of log events waiting in the ring buffer of the async mode to be laid out.
+     */
+    long getAsyncBufferedEventsCount();
+
+    /**
+     * Number of log events dropped because the ring buffer of the async mode was full, with the <code>DISCARD</code>
+     * policy.
+     */
+    long getAsyncDiscardedEventsCount();
+
+    /**
+     * Number of log events laid out on the logging thread because the ring buffer of the async mode was full, with the
+     * <code>RUN_IN_CALLER</code> policy.
+     */
+    long getAsyncRunInCallerEventsCount();
+
+    /**
+     * Ratio of the events up to <code>overloadSamplingLevel</code> currently kept by the overload sampling,
+     * <code>1</code> when the buffer is below the high-water mark.
+     */
+    double getOverloadSamplingRatio();
+
+    /**
+     * Number of repeated log events dropped by the deduplication.
+     */
+    long getDedupSuppressedEventsCount();
+
+    /**
+     * Number of <code>Repeated N times</code> events logged by the deduplication.
+     */
+    long getDedupSummaryEventsCount();
+
+    /**
+     * Whether the sends are suspended by the send rate limits, until enough tokens are available.
+     */
+    boolean isThrottled();
+
+    /**
+     * Number of times a bucket was kept buffered by the send rate limits.
+     */
+    int getThrottledCount();
+
+    /**
+     * Bytes that can be sent right away under the <code>maxSendBytesPerSecond</code> limit, <code>-1</code> without
+     * limit.
+     */
+    long getAvailableSendBytesTokens();
+
+    /**
+     * Posts that can be sent right away under the <code>maxSendRequestsPerSecond</code> limit, <code>-1</code>
+     * without limit.
+     */
+    long getAvailableSendRequestsTokens();
+
+    /**
+     * Size from which the buckets are rolled and sent, tuned at runtime in adaptive mode.
+     */
+    long getCurrentBucketSizeInBytes();
+
+    /**
+     * Max time a partially filled bucket waits before being sent, tuned at runtime in adaptive mode.
+     */
+    long getCurrentLingerMillis();
+
     /**
      * Number of discarded buckets
      */
     int getDiscardedBucketsCount();
 
+    /**
+     * Number of log events dropped, all overflow policies included.
+     */
+    long getDroppedEventsCount();
+
+    /**
+     * Number of log events dropped with the newest bucket under the <code>DISCARD_NEWEST</code> overflow policy.
+     */
+    long getDiscardedNewestEventsCount();
+
+    /**
+     * Number of log events dropped with the oldest bucket under the <code>DISCARD_OLDEST</code> overflow policy.
+     */
+    long getDiscardedOldestEventsCount();
+
+    /**
+     * Number of log events dropped after waiting for room under the <code>BLOCK</code> overflow policy.
+     */
+    long getBlockTimeoutDroppedEventsCount();
+
+    /**
+     * Number of log events dropped by sampling or with the newest bucket under the <code>SAMPLE</code> overflow policy.
+     */
+    long getSampledOutEventsCount();
+
+    /**
+     * Number of log events truncated to the max event size.
+     */
+    long getTruncatedEventsCount();
+
     /**
      * Size in bytes of the log entries that have not yet been sent to Loggly.
      */
     long getCurrentLogEntriesBufferSizeInBytes();
 
+    /**
+     * Number of discarded buckets of the reserved buffer of priority events.
+     */
+    int getPriorityDiscardedBucketsCount();
+
+    /**
+     * Size in bytes of the priority log entries that have not yet been sent to Loggly.
+     */
+    long getPriorityLogEntriesBufferSizeInBytes();
+
+    /**
+     * Number of buckets spilled to disk instead of being discarded
+     */
+    int getSpilledBucketsCount();
+
+    /**
+     * Size in bytes of the log entries spilled to disk that have not yet been sent to Loggly.
+     */
+    long getSpillSizeInBytes();
+
     boolean isDebug();
 
     /**
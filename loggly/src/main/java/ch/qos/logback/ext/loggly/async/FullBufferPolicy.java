@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.async;
+
+/**
+ * What a logging thread does when the {@link RingBuffer} of the async mode is full.
+ */
+public enum FullBufferPolicy {
+
+    /**
+     * Drop the event.
+     */
+    DISCARD,
+
+    /**
+     * Wait for room with the {@link WaitStrategy} of the workers. The logging thread is slowed down to the pace of the
+     * workers.
+     */
+    BLOCK,
+
+    /**
+     * Render and buffer the event on the logging thread, as without async mode. Events may then be buffered out of
+     * order with the ones still in the ring buffer.
+     */
+    RUN_IN_CALLER
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.async;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link RingBuffer}: a worker for events to be published, or a logging thread for room with
+ * the {@link FullBufferPolicy#BLOCK} policy. The strategies trade the CPU burnt while idle for the latency of the
+ * wake up.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Spin without giving up the CPU: lowest latency, burns a core per waiting thread. Only for dedicated cores.
+     */
+    BUSY_SPIN {
+        @Override
+        public int idle(int attempt) {
+            return next(attempt);
+        }
+    },
+
+    /**
+     * Spin briefly then yield the CPU to other threads, still burning CPU while idle.
+     */
+    YIELDING {
+        @Override
+        public int idle(int attempt) {
+            if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return next(attempt);
+        }
+    },
+
+    /**
+     * Spin briefly, yield, then park with a pause growing from 1 microsecond to 1 millisecond: negligible CPU while
+     * idle, up to a millisecond of wake up latency.
+     */
+    PARKING {
+        @Override
+        public int idle(int attempt) {
+            if (attempt >= 2 * SPIN_TRIES) {
+                LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << (attempt - 2 * SPIN_TRIES)));
+            } else if (attempt >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return next(attempt);
+        }
+    };
+
+    static final int SPIN_TRIES = 100;
+
+    static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // the pause of PARKING stops growing beyond it
+    static final int MAX_ATTEMPT = 2 * SPIN_TRIES + 10;
+
+    /**
+     * Waits once, before checking the ring buffer again.
+     *
+     * @param attempt number of consecutive unsuccessful checks, <code>0</code> for the first one
+     * @return the attempt to give to the next call, the caller starts again from <code>0</code> once it succeeds
+     */
+    public abstract int idle(int attempt);
+
+    private static int next(int attempt) {
+        return Math.min(attempt + 1, MAX_ATTEMPT);
+    }
+}
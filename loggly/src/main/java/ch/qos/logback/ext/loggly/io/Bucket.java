@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * Chunk of buffered log entries managed by the {@link DiscardingRollingOutputStream}.
+ * </p>
+ * <p>
+ * Buckets are not thread safe: they are written by the {@link DiscardingRollingOutputStream} under the lock of their
+ * stripe and read by the consumer of the {@linkplain DiscardingRollingOutputStream#getFilledBuckets() filled buckets}.
+ * Only the event count and times can be read by other threads, for monitoring.
+ * </p>
+ */
+public abstract class Bucket extends OutputStream {
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private int sendAttempts;
+
+    // volatile for the monitoring reads outside of the stripe lock, only written under it
+    private volatile int eventCount;
+
+    private volatile long firstEventNanos;
+
+    private volatile long lastEventNanos;
+
+    @Override
+    public abstract void write(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * @return the number of bytes written in this bucket
+     */
+    public abstract int size();
+
+    /**
+     * @return the number of bytes that can still be written in this bucket, {@link Integer#MAX_VALUE} if it grows
+     * on demand
+     */
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE - size();
+    }
+
+    /**
+     * Discards the content of this bucket so that it can be reused.
+     */
+    public abstract void reset();
+
+    /**
+     * @return the number of failed attempts to send this bucket
+     */
+    public int getSendAttempts() {
+        return sendAttempts;
+    }
+
+    /**
+     * Records a failed attempt to send this bucket.
+     *
+     * @return the number of failed attempts, including this one
+     */
+    public int incrementSendAttempts() {
+        return ++sendAttempts;
+    }
+
+    /**
+     * Clears the failed attempts, when the bucket is recycled.
+     */
+    public void resetSendAttempts() {
+        sendAttempts = 0;
+    }
+
+    /**
+     * @return the number of lines written with {@link DiscardingRollingOutputStream#writeLine(CharSequence)} that end
+     * in this bucket
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Records a line written in this bucket, and the time it was appended.
+     */
+    public void incrementEventCount() {
+        lastEventNanos = System.nanoTime();
+        if (eventCount++ == 0) {
+            firstEventNanos = lastEventNanos;
+        }
+    }
+
+    public void resetEventCount() {
+        eventCount = 0;
+        firstEventNanos = 0;
+        lastEventNanos = 0;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the first line written in this bucket, <code>0</code> if none or if
+     * the bucket has been read back from disk
+     */
+    public long getFirstEventNanos() {
+        return firstEventNanos;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the last line written in this bucket, <code>0</code> if none or if
+     * the bucket has been read back from disk
+     */
+    public long getLastEventNanos() {
+        return lastEventNanos;
+    }
+
+    /**
+     * Writes the content of this bucket to the given stream.
+     *
+     * @param out the destination stream
+     * @throws IOException exception writing to the destination
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes the content of this bucket at the position of the given buffer.
+     *
+     * @param dst the destination buffer
+     * @throws java.nio.BufferOverflowException if the destination buffer is too small
+     */
+    public abstract void writeTo(ByteBuffer dst);
+
+    /**
+     * @return a read-only view of the content of this bucket over its storage, valid until the bucket is written to or
+     * reset
+     */
+    public abstract ByteBuffer asReadOnlyBuffer();
+
+    /**
+     * Writes the remaining bytes of the given buffer.
+     *
+     * @param src the source buffer
+     * @throws IOException exception writing to the bucket
+     */
+    public abstract void write(ByteBuffer src) throws IOException;
+
+    /**
+     * Writes the given characters encoded in UTF-8. Unpaired surrogates are replaced by '?'.
+     *
+     * @param chars the characters to encode
+     * @throws IOException exception writing to the bucket
+     */
+    public void writeUtf8(CharSequence chars) throws IOException {
+        writeUtf8(chars, 0, chars.length());
+    }
+
+    /**
+     * Writes the characters from index {@code start} to {@code end} (exclusive) encoded in UTF-8. Unpaired surrogates
+     * are replaced by '?'. Implementations are expected to override this method and encode directly into their storage.
+     *
+     * @param chars the characters to encode
+     * @param start index of the first character to encode
+     * @param end   index after the last character to encode
+     * @throws IOException exception writing to the bucket
+     */
+    public void writeUtf8(CharSequence chars, int start, int end) throws IOException {
+        write(chars.subSequence(start, end).toString().getBytes(UTF_8));
+    }
+
+    /**
+     * @return a copy of the content of this bucket
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size());
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size=" + size() + '}';
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * {@link InputStream} view of a {@link Bucket}.
+ * </p>
+ * <p>
+ * Consumers aware of this class use {@link #writeTo(OutputStream)} to write the bucket storage straight to their
+ * destination. Reading the stream copies the content of the bucket on first read.
+ * </p>
+ */
+public class BucketInputStream extends InputStream {
+
+    private final Bucket bucket;
+
+    private ByteArrayInputStream content;
+
+    public BucketInputStream(Bucket bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * @return the number of bytes of the underlying bucket
+     */
+    public int size() {
+        return bucket.size();
+    }
+
+    /**
+     * Writes the whole content of the underlying bucket to the given stream without intermediate copy.
+     *
+     * @param out the destination stream
+     * @throws IOException exception writing to the destination
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        bucket.writeTo(out);
+    }
+
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public int read() {
+        return content().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        return content().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) {
+        return content().skip(n);
+    }
+
+    @Override
+    public int available() {
+        return content().available();
+    }
+
+    private ByteArrayInputStream content() {
+        if (content == null) {
+            content = new ByteArrayInputStream(bucket.toByteArray());
+        }
+        return content;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Fixed capacity {@link Bucket} backed by a slice of a direct {@link ByteBuffer}.
+ * </p>
+ * <p>
+ * Buckets are carved out of a single slab allocated once by {@link #allocate(int, int)} so that buffering log entries
+ * doesn't allocate on the heap. Writing more than {@link #remainingCapacity()} bytes fails with a
+ * {@link java.nio.BufferOverflowException}, the {@link DiscardingRollingOutputStream} rolls buckets before that happens.
+ * </p>
+ */
+public class DirectBucket extends Bucket {
+
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer the storage of this bucket, from its position to its limit
+     */
+    public DirectBucket(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Allocates a single direct slab and splits it in buckets.
+     *
+     * @param bucketCount number of buckets
+     * @param bucketCapacity capacity in bytes of each bucket
+     * @return the buckets
+     */
+    public static DirectBucket[] allocate(int bucketCount, int bucketCapacity) {
+        long slabSize = (long) bucketCount * bucketCapacity;
+        if (slabSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Slab of " + bucketCount + " buckets of " + bucketCapacity + " bytes is too large");
+        }
+        ByteBuffer slab = ByteBuffer.allocateDirect((int) slabSize);
+        DirectBucket[] buckets = new DirectBucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            slab.limit((i + 1) * bucketCapacity);
+            slab.position(i * bucketCapacity);
+            buckets[i] = new DirectBucket(slab);
+        }
+        return buckets;
+    }
+
+    @Override
+    public void write(int b) {
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void writeUtf8(CharSequence chars, int start, int end) {
+        int i = start;
+        if (end - start <= buffer.remaining()) {
+            for (; i < end; i++) {
+                char c = chars.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                buffer.put((byte) c);
+            }
+        }
+        if (i < end) {
+            Utf8.encode(chars, i, end, buffer);
+        }
+    }
+
+    @Override
+    public int size() {
+        return buffer.position();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void reset() {
+        buffer.clear();
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dst) {
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        dst.put(content);
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyBuffer() {
+        ByteBuffer content = buffer.asReadOnlyBuffer();
+        content.flip();
+        return content;
+    }
+
+    @Override
+    public void write(ByteBuffer src) {
+        buffer.put(src);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        byte[] copyBuffer = new byte[Math.min(content.remaining(), COPY_BUFFER_SIZE)];
+        while (content.hasRemaining()) {
+            int len = Math.min(content.remaining(), copyBuffer.length);
+            content.get(copyBuffer, 0, len);
+            out.write(copyBuffer, 0, len);
+        }
+    }
+}
@@ -15,18 +15,23 @@
  */
 package ch.qos.logback.ext.loggly.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
- * Capped in-memory {@linkplain OutputStream} composed of a chain of {@linkplain ByteArrayOutputStream} called 'buckets'.
+ * Capped in-memory {@linkplain OutputStream} composed of a chain of {@linkplain Bucket buckets}.
  * </p>
  * <p>
  * Each 'bucket' is limited in size (see {@link #maxBucketSizeInBytes}) and the total size of the {@linkplain OutputStream}
@@ -37,9 +42,19 @@ import java.util.concurrent.locks.ReentrantLock;
  * Implementation decisions:
  * </p>
  * <ul>
- * <li>Why in-memory without offload on disk: offload on disk was possible with Google Guava's
+ * <li>Why striping: with a single active bucket, every writing thread contends on the same lock. When
+ * {@code stripeCount > 1}, each thread writes into the active bucket of the stripe selected by its thread id, and rolled
+ * buckets from all the stripes are queued in {@link #getFilledBuckets()} in the order they were rolled.</li>
+ * <li>Why off-heap buckets: heap buckets grow by doubling and, on busy appenders, end up as large long-lived arrays
+ * promoted to the old generation. When {@code offHeap} is set, buckets are fixed capacity slices of a single direct
+ * buffer allocated upfront and recycled, so buffering doesn't allocate on the heap.</li>
+ * <li>Why in-memory with an optional offload on disk: offload on disk was possible with Google Guava's
  * <code>FileBackedOutputStream</code> but had the drawback to introduce a dependency. Loggly batch appender use case
- * should be OK with a pure in-memory approach.</li>
+ * is mostly OK with a pure in-memory approach. When a {@link MappedSpillQueue} is configured, buckets that don't fit in
+ * the filled buckets are spilled to memory-mapped files instead of being discarded. They are consumed with
+ * {@link #peekSpilledBucket()} and {@link #removeSpilledBucket()}, after the filled buckets.</li>
+ * <li>When the filled buckets are full and the rolled bucket can't be spilled, the {@link OverflowPolicy} decides
+ * which events are lost, or whether the writing thread waits. Lost events are counted per policy.</li>
  * </ul>
  *
  * @author <a href="mailto:cleclerc@xebia.fr">Cyrille Le Clerc</a>
@@ -48,75 +63,294 @@ public class DiscardingRollingOutputStream extends OutputStream {
 
     public static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
-    private ByteArrayOutputStream currentBucket;
+    /**
+     * Appended to the lines truncated to the max event size.
+     */
+    public static final String TRUNCATION_MARKER = "...[truncated]";
+
+    private static final byte[] TRUNCATION_MARKER_BYTES = TRUNCATION_MARKER.getBytes(Bucket.UTF_8);
+
+    private static final long BLOCK_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
 
-    private final ReentrantLock currentBucketLock = new ReentrantLock();
+    private final Stripe[] stripes;
 
-    private final BlockingDeque<ByteArrayOutputStream> filledBuckets;
+    private final BlockingDeque<Bucket> filledBuckets;
 
-    private final ConcurrentLinkedQueue<ByteArrayOutputStream> recycledBucketPool;
+    private final ConcurrentLinkedQueue<Bucket> recycledBucketPool;
 
-    private long maxBucketSizeInBytes;
+    private final int bucketCapacityInBytes;
+
+    private volatile long maxBucketSizeInBytes;
+
+    private final boolean offHeap;
 
     private final AtomicInteger discardedBucketCount = new AtomicInteger();
 
+    private final AtomicInteger spilledBucketCount = new AtomicInteger();
+
+    private volatile MappedSpillQueue spillQueue;
+
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DISCARD_NEWEST;
+
+    private volatile long blockTimeoutMillis = 1000;
+
+    private volatile double sampleRate = 0.1;
+
+    private volatile int maxEventSizeInBytes;
+
+    private volatile int maxRequestSizeInBytes;
+
+    private final AtomicLong truncatedEventCount = new AtomicLong();
+
+    private final LongAdder writtenBytes = new LongAdder();
+
+    private final AtomicLongArray droppedEventCounts = new AtomicLongArray(OverflowPolicy.values().length);
+
     /**
      * @param maxBucketSizeInBytes maximum byte size of each bucket
      * @param maxBucketCount maximum number of buckets
      */
     public DiscardingRollingOutputStream(int maxBucketSizeInBytes, int maxBucketCount) {
+        this(maxBucketSizeInBytes, maxBucketCount, 1);
+    }
+
+    /**
+     * @param maxBucketSizeInBytes maximum byte size of each bucket
+     * @param maxBucketCount maximum number of buckets
+     * @param stripeCount number of active buckets written concurrently. Each active bucket counts against
+     *                    {@code maxBucketCount}, so {@code stripeCount} may not exceed it.
+     */
+    public DiscardingRollingOutputStream(int maxBucketSizeInBytes, int maxBucketCount, int stripeCount) {
+        this(maxBucketSizeInBytes, maxBucketCount, stripeCount, false);
+    }
+
+    /**
+     * @param maxBucketSizeInBytes maximum byte size of each bucket
+     * @param maxBucketCount maximum number of buckets
+     * @param stripeCount number of active buckets written concurrently. Each active bucket counts against
+     *                    {@code maxBucketCount}, so {@code stripeCount} may not exceed it.
+     * @param offHeap {@code true} to preallocate the buckets in a direct buffer of
+     *                {@code (maxBucketCount + 2) * maxBucketSizeInBytes} bytes, which includes the bucket being
+     *                consumed. Heap buckets are only used if the consumer holds more buckets at once.
+     */
+    public DiscardingRollingOutputStream(int maxBucketSizeInBytes, int maxBucketCount, int stripeCount, boolean offHeap) {
+        this(maxBucketSizeInBytes, maxBucketCount, stripeCount, offHeap, 1);
+    }
+
+    /**
+     * @param maxBucketSizeInBytes maximum byte size of each bucket
+     * @param maxBucketCount maximum number of buckets
+     * @param stripeCount number of active buckets written concurrently. Each active bucket counts against
+     *                    {@code maxBucketCount}, so {@code stripeCount} may not exceed it.
+     * @param offHeap {@code true} to preallocate the buckets in a direct buffer of
+     *                {@code (maxBucketCount + 1 + consumerCount) * maxBucketSizeInBytes} bytes, which includes the
+     *                buckets being consumed. Heap buckets are only used if the consumers hold more buckets at once.
+     * @param consumerCount number of threads consuming filled buckets concurrently, one bucket each
+     */
+    public DiscardingRollingOutputStream(int maxBucketSizeInBytes, int maxBucketCount, int stripeCount, boolean offHeap, int consumerCount) {
         if (maxBucketCount < 2) {
             throw new IllegalArgumentException("'maxBucketCount' must be >1");
         }
+        if (stripeCount < 1 || stripeCount > maxBucketCount) {
+            throw new IllegalArgumentException("'stripeCount' must be >0 and <='maxBucketCount'");
+        }
 
+        this.bucketCapacityInBytes = maxBucketSizeInBytes;
         this.maxBucketSizeInBytes = maxBucketSizeInBytes;
-        this.filledBuckets = new LinkedBlockingDeque<ByteArrayOutputStream>(maxBucketCount);
-
-        this.recycledBucketPool = new ConcurrentLinkedQueue<ByteArrayOutputStream>();
-        this.currentBucket = newBucket();
+        // the first active bucket comes on top of 'maxBucketCount' for backward compatibility, the other ones don't
+        this.filledBuckets = new LinkedBlockingDeque<Bucket>(maxBucketCount - stripeCount + 1);
+
+        this.recycledBucketPool = new ConcurrentLinkedQueue<Bucket>();
+        this.offHeap = offHeap;
+        if (offHeap) {
+            // filled buckets + active buckets + the buckets being consumed
+            for (DirectBucket bucket : DirectBucket.allocate(maxBucketCount + 1 + consumerCount, maxBucketSizeInBytes)) {
+                recycledBucketPool.offer(bucket);
+            }
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(newBucket());
+        }
     }
 
 
     @Override
     public void write(int b) throws IOException {
-        currentBucketLock.lock();
+        Stripe stripe = currentStripe();
+        stripe.lock.lock();
         try {
-            currentBucket.write(b);
-            rollCurrentBucketIfNeeded();
+            if (isFull(stripe) && !rollBucket(stripe, Roller.WRITER)) {
+                return;
+            }
+            stripe.bucket.write(b);
+            writtenBytes.increment();
+            rollCurrentBucketIfNeeded(stripe);
         } finally {
-            currentBucketLock.unlock();
+            stripe.lock.unlock();
         }
     }
 
     @Override
     public void write(byte[] b) throws IOException {
-        currentBucketLock.lock();
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Stripe stripe = currentStripe();
+        stripe.lock.lock();
         try {
-            currentBucket.write(b);
-            rollCurrentBucketIfNeeded();
+            if (writeInBuckets(stripe, b, off, len)) {
+                writtenBytes.add(len);
+            }
+            rollCurrentBucketIfNeeded(stripe);
         } finally {
-            currentBucketLock.unlock();
+            stripe.lock.unlock();
         }
     }
 
-    @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-        currentBucketLock.lock();
+    /**
+     * Writes the given characters encoded in UTF-8 directly in the active bucket, followed by a new line if they
+     * don't already end with one. Lines larger than the {@linkplain #setMaxEventSizeInBytes(int) max event size} are
+     * truncated and end with {@link #TRUNCATION_MARKER}. The active bucket is rolled first if the line would exceed the
+     * {@linkplain #setMaxRequestSizeInBytes(int) max request size}. The line is only split across buckets if it is
+     * larger than a fixed capacity bucket.
+     *
+     * @param chars the characters to write
+     * @throws IOException exception writing to the bucket
+     */
+    public void writeLine(CharSequence chars) throws IOException {
+        if (overflowPolicy == OverflowPolicy.SAMPLE && filledBuckets.remainingCapacity() == 0
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            droppedEventCounts.incrementAndGet(OverflowPolicy.SAMPLE.ordinal());
+            return;
+        }
+        int len = chars.length();
+        // the new line is written separately
+        int end = len > 0 && chars.charAt(len - 1) == '\n' ? len - 1 : len;
+        int maxLineSize = getMaxLineSizeInBytes();
+        boolean truncated = false;
+        Stripe stripe = currentStripe();
+        stripe.lock.lock();
         try {
-            currentBucket.write(b, off, len);
-            rollCurrentBucketIfNeeded();
+            if (isFull(stripe) && !rollBucket(stripe, Roller.WRITER)) {
+                dropSampledLine();
+                return;
+            }
+            // cheap upper bound first, exact encoded length only when the line may not fit
+            if (3L * end + 1 > Math.min(maxLineSize, remainingCapacity(stripe))) {
+                int lineSize = Utf8.encodedLength(chars, 0, end) + 1;
+                if (lineSize > maxLineSize) {
+                    end = Utf8.prefixLength(chars, end, maxLineSize - TRUNCATION_MARKER_BYTES.length - 1);
+                    lineSize = Utf8.encodedLength(chars, 0, end) + TRUNCATION_MARKER_BYTES.length + 1;
+                    truncated = true;
+                    truncatedEventCount.incrementAndGet();
+                }
+                // other writers may fill the new bucket while a writer waits for room
+                while (lineSize > remainingCapacity(stripe) && stripe.bucket.size() > 0) {
+                    if (!rollBucket(stripe, Roller.WRITER)) {
+                        dropSampledLine();
+                        return;
+                    }
+                }
+                if (lineSize > remainingCapacity(stripe)) {
+                    if (overflowPolicy == OverflowPolicy.SAMPLE && filledBuckets.remainingCapacity() == 0) {
+                        // no room to split the line across buckets
+                        dropSampledLine();
+                        return;
+                    }
+                    String line = chars.subSequence(0, end) + (truncated ? TRUNCATION_MARKER : "") + "\n";
+                    byte[] encoded = line.getBytes(Bucket.UTF_8);
+                    if (writeInBuckets(stripe, encoded, 0, encoded.length)) {
+                        stripe.bucket.incrementEventCount();
+                        writtenBytes.add(encoded.length);
+                    } else {
+                        dropSampledLine();
+                    }
+                    rollCurrentBucketIfNeeded(stripe);
+                    return;
+                }
+            }
+            int sizeBefore = stripe.bucket.size();
+            stripe.bucket.writeUtf8(chars, 0, end);
+            if (truncated) {
+                stripe.bucket.write(TRUNCATION_MARKER_BYTES);
+            }
+            stripe.bucket.write('\n');
+            stripe.bucket.incrementEventCount();
+            writtenBytes.add(stripe.bucket.size() - sizeBefore);
+            rollCurrentBucketIfNeeded(stripe);
         } finally {
-            currentBucketLock.unlock();
+            stripe.lock.unlock();
         }
     }
 
+    /**
+     * Counts a line dropped with {@link OverflowPolicy#SAMPLE} because the active bucket could not be rolled.
+     */
+    private void dropSampledLine() {
+        droppedEventCounts.incrementAndGet(OverflowPolicy.SAMPLE.ordinal());
+    }
+
+    /**
+     * @return the max size of a line, including its new line
+     */
+    private int getMaxLineSizeInBytes() {
+        int maxLineSize = maxEventSizeInBytes > 0 ? maxEventSizeInBytes + 1 : Integer.MAX_VALUE;
+        if (maxRequestSizeInBytes > 0) {
+            maxLineSize = Math.min(maxLineSize, maxRequestSizeInBytes);
+        }
+        return maxLineSize;
+    }
+
+    /**
+     * @return the number of bytes that can still be written in the active bucket of the given stripe without
+     * exceeding its capacity or the max request size
+     */
+    private int remainingCapacity(Stripe stripe) {
+        int remaining = stripe.bucket.remainingCapacity();
+        if (maxRequestSizeInBytes > 0) {
+            remaining = Math.min(remaining, maxRequestSizeInBytes - stripe.bucket.size());
+        }
+        return remaining;
+    }
+
+    /**
+     * Writes the given bytes in the active bucket of the given stripe, after rolling it if they don't fit. Bytes that
+     * don't fit in an empty bucket are split across buckets. Must hold the stripe lock.
+     *
+     * @return {@code false} if the bytes, or the end of the bytes split across buckets, have been dropped because
+     * the active bucket could not be rolled with {@link OverflowPolicy#SAMPLE}
+     */
+    private boolean writeInBuckets(Stripe stripe, byte[] b, int off, int len) throws IOException {
+        while (len > remainingCapacity(stripe) && stripe.bucket.size() > 0) {
+            if (!rollBucket(stripe, Roller.WRITER)) {
+                return false;
+            }
+        }
+        while (len > remainingCapacity(stripe)) {
+            int chunkLength = remainingCapacity(stripe);
+            stripe.bucket.write(b, off, chunkLength);
+            off += chunkLength;
+            len -= chunkLength;
+            if (!rollBucket(stripe, Roller.WRITER_WITHIN_LINE)) {
+                return false;
+            }
+        }
+        stripe.bucket.write(b, off, len);
+        return true;
+    }
+
     @Override
     public void flush() throws IOException {
-        currentBucketLock.lock();
-        try {
-            currentBucket.flush();
-        } finally {
-            currentBucketLock.unlock();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.bucket.flush();
+            } finally {
+                stripe.lock.unlock();
+            }
         }
     }
 
@@ -125,57 +359,223 @@ public class DiscardingRollingOutputStream extends OutputStream {
      */
     @Override
     public void close() {
-        // no-op as ByteArrayOutputStream#close() is no op
+        // no-op as buckets are in-memory
     }
 
     /**
-     * Roll current bucket if size threshold has been reached.
+     * Select the stripe of the calling thread.
      */
-    private void rollCurrentBucketIfNeeded() {
-        if (currentBucket.size() < maxBucketSizeInBytes) {
-            return;
+    private Stripe currentStripe() {
+        if (stripes.length == 1) {
+            return stripes[0];
         }
-        rollCurrentBucket();
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    /**
+     * Roll current bucket of the given stripe if size threshold has been reached. Must hold the stripe lock.
+     */
+    private void rollCurrentBucketIfNeeded(Stripe stripe) {
+        if (isFull(stripe)) {
+            rollBucket(stripe, Roller.WRITER);
+        }
+    }
+
+    /**
+     * @return {@code true} if the active bucket of the given stripe reached the max bucket size or its capacity. Must
+     * hold the stripe lock.
+     */
+    private boolean isFull(Stripe stripe) {
+        return stripe.bucket.size() >= maxBucketSizeInBytes || remainingCapacity(stripe) <= 0;
     }
 
     /**
-     * Roll current bucket if size threshold has been reached.
+     * Roll current buckets that are not empty.
      */
     public void rollCurrentBucketIfNotEmpty() {
-        if (currentBucket.size() == 0) {
-            return;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                if (stripe.bucket.size() != 0) {
+                    rollBucket(stripe, Roller.CONSUMER);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
         }
-        rollCurrentBucket();
     }
 
     /**
-     * Moves the current active bucket to the list of filled buckets and defines a new one.
+     * Moves the current active buckets to the list of filled buckets and defines new ones.
      *
-     * The new active bucket is reused from the {@link #recycledBucketPool} pool if one is available or recreated.
+     * The new active buckets are reused from the {@link #recycledBucketPool} pool if available or recreated.
      */
     public void rollCurrentBucket() {
-        currentBucketLock.lock();
-        try {
-            boolean offered = filledBuckets.offer(currentBucket);
-            if (offered) {
-                onBucketRoll(currentBucket);
-            } else {
-                onBucketDiscard(currentBucket);
-                discardedBucketCount.incrementAndGet();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                rollBucket(stripe, Roller.CONSUMER);
+            } finally {
+                stripe.lock.unlock();
             }
+        }
+    }
 
-            currentBucket = newBucket();
-        } finally {
-            currentBucketLock.unlock();
+    /**
+     * Moves the active bucket of the given stripe to the list of filled buckets. If they are full, the bucket is
+     * spilled or the {@link OverflowPolicy} applies. Must hold the stripe lock, which is released while a writer waits
+     * for room with {@link OverflowPolicy#BLOCK}: the active bucket stays full meanwhile, so the other writers of the
+     * stripe wait as well.
+     *
+     * @return {@code false} if the active bucket has been kept because there is no room for it: with
+     * {@link OverflowPolicy#SAMPLE}, or with {@link OverflowPolicy#BLOCK} when the consumer rolls it
+     */
+    private boolean rollBucket(Stripe stripe, Roller roller) {
+        Bucket rolledBucket = stripe.bucket;
+        if (filledBuckets.offer(rolledBucket)) {
+            stripe.bucket = newBucket();
+            stripe.rolled.signalAll();
+            onBucketRoll(rolledBucket);
+            return true;
+        }
+        if (roller == Roller.WRITER && overflowPolicy == OverflowPolicy.BLOCK && awaitRoom(stripe, rolledBucket)) {
+            return true;
+        }
+        if (spill(rolledBucket)) {
+            // the content is on disk, reuse the bucket as the new active bucket
+            clear(rolledBucket);
+            spilledBucketCount.incrementAndGet();
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.SAMPLE
+                || (overflowPolicy == OverflowPolicy.BLOCK && roller == Roller.CONSUMER)) {
+            // SAMPLE drops lines rather than buckets, and with BLOCK the writers wait for room to roll it themselves
+            return false;
+        }
+        if (overflowPolicy == OverflowPolicy.DISCARD_OLDEST) {
+            Bucket oldestBucket = filledBuckets.pollFirst();
+            if (oldestBucket != null) {
+                discard(oldestBucket);
+                recycleBucket(oldestBucket);
+                if (filledBuckets.offer(rolledBucket)) {
+                    stripe.bucket = newBucket();
+                    onBucketRoll(rolledBucket);
+                    onBucketDiscard(stripe.bucket);
+                    return true;
+                }
+            }
+        }
+        // reuse the discarded bucket as the new active bucket
+        discard(rolledBucket);
+        clear(rolledBucket);
+        onBucketDiscard(rolledBucket);
+        return true;
+    }
+
+    /**
+     * Waits up to the block timeout until the full active bucket of the given stripe is rolled, by the calling thread
+     * when there is room in the filled buckets, or by another thread. No bucket is allocated meanwhile. Must hold the
+     * stripe lock, which is released while waiting.
+     *
+     * @return {@code false} if the active bucket is still the given bucket when the block timeout elapses
+     */
+    private boolean awaitRoom(Stripe stripe, Bucket rolledBucket) {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        long deadline = System.nanoTime() + remainingNanos;
+        while (remainingNanos > 0) {
+            try {
+                // nothing signals when the consumer takes a filled bucket, check for room by slices
+                stripe.rolled.awaitNanos(Math.min(remainingNanos, BLOCK_SLICE_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (stripe.bucket != rolledBucket || rolledBucket.size() == 0) {
+                // rolled or spilled by another thread while waiting
+                return true;
+            }
+            if (filledBuckets.offer(rolledBucket)) {
+                stripe.bucket = newBucket();
+                stripe.rolled.signalAll();
+                onBucketRoll(rolledBucket);
+                return true;
+            }
+            remainingNanos = deadline - System.nanoTime();
+        }
+        return false;
+    }
+
+    /**
+     * Counts the given bucket and its events as dropped by the current overflow policy.
+     */
+    private void discard(Bucket bucket) {
+        discardedBucketCount.incrementAndGet();
+        droppedEventCounts.addAndGet(overflowPolicy.ordinal(), bucket.getEventCount());
+    }
+
+    private void clear(Bucket bucket) {
+        bucket.reset();
+        bucket.resetEventCount();
+        bucket.resetSendAttempts();
+    }
+
+    /**
+     * @return {@code true} if the bucket has been appended to the spill queue
+     */
+    private boolean spill(Bucket bucket) {
+        MappedSpillQueue spillQueue = this.spillQueue;
+        if (spillQueue == null) {
+            return false;
         }
+        return spillQueue.offer(bucket);
     }
 
     /**
-     * Designed for extension.
+     * Copies the oldest spilled bucket without removing it from the spill queue. The caller is expected to
+     * {@linkplain #recycleBucket(Bucket) recycle} the returned bucket and to call {@link #removeSpilledBucket()} once
+     * its content has been consumed.
      *
-     * @param discardedBucket the discarded bucket
+     * @return a copy of the oldest spilled bucket, {@code null} if there is none
+     * @throws IOException exception reading the spill queue
      */
-    protected void onBucketDiscard(ByteArrayOutputStream discardedBucket) {
+    public Bucket peekSpilledBucket() throws IOException {
+        MappedSpillQueue spillQueue = this.spillQueue;
+        if (spillQueue == null) {
+            return null;
+        }
+        synchronized (spillQueue) {
+            int size = spillQueue.peekSize();
+            if (size < 0) {
+                return null;
+            }
+            Bucket bucket = newBucket();
+            if (bucket.remainingCapacity() < size) {
+                recycleBucket(bucket);
+                bucket = new HeapBucket(size);
+            }
+            spillQueue.peek(bucket);
+            return bucket;
+        }
+    }
+
+    /**
+     * Removes the oldest spilled bucket from the spill queue.
+     */
+    public void removeSpilledBucket() {
+        MappedSpillQueue spillQueue = this.spillQueue;
+        if (spillQueue != null) {
+            spillQueue.remove();
+        }
+    }
+
+    /**
+     * Designed for extension. Invoked with the lock of the stripe held.
+     *
+     * @param discardedBucket the new active bucket: the discarded bucket itself, emptied, or, with
+     *                        {@link OverflowPolicy#DISCARD_OLDEST}, a fresh one. Messages written to it are sent with the
+     *                        next logs.
+     */
+    protected void onBucketDiscard(Bucket discardedBucket) {
 
     }
 
@@ -184,7 +584,7 @@ public class DiscardingRollingOutputStream extends OutputStream {
      *
      * @param rolledBucket the discarded bucket
      */
-    protected void onBucketRoll(ByteArrayOutputStream rolledBucket) {
+    protected void onBucketRoll(Bucket rolledBucket) {
 
     }
 
@@ -194,10 +594,10 @@ public class DiscardingRollingOutputStream extends OutputStream {
      *
      * @return the bucket ready to use
      */
-    protected ByteArrayOutputStream newBucket() {
-        ByteArrayOutputStream bucket = recycledBucketPool.poll();
+    protected Bucket newBucket() {
+        Bucket bucket = recycledBucketPool.poll();
         if (bucket == null) {
-            bucket = new ByteArrayOutputStream();
+            bucket = new HeapBucket();
         }
         return bucket;
     }
@@ -207,18 +607,194 @@ public class DiscardingRollingOutputStream extends OutputStream {
      *
      * @param bucket the bucket to recycle
      */
-    public void recycleBucket(ByteArrayOutputStream bucket) {
-        bucket.reset();
+    public void recycleBucket(Bucket bucket) {
+        if (offHeap && !(bucket instanceof DirectBucket)) {
+            // let the heap buckets allocated when the slab was exhausted be garbage collected
+            return;
+        }
+        clear(bucket);
         recycledBucketPool.offer(bucket);
     }
 
+    /**
+     * Puts back a bucket that could not be sent at the head of the filled buckets so that it is sent again before
+     * the newer ones. If the filled buckets are full, the bucket is spilled or, failing that, depending on the
+     * {@link OverflowPolicy}:
+     * <ul>
+     * <li>{@link OverflowPolicy#DISCARD_NEWEST} and {@link OverflowPolicy#BLOCK}: the newest filled bucket is discarded
+     * to make room for it. A requeue never waits.</li>
+     * <li>{@link OverflowPolicy#DISCARD_OLDEST}: the bucket, which is the oldest one, is discarded.</li>
+     * <li>{@link OverflowPolicy#SAMPLE}: the bucket, which is the oldest one, is discarded so that the filled buckets
+     * keep the lines sampled meanwhile.</li>
+     * </ul>
+     * Discarded buckets and their events are counted.
+     *
+     * @param bucket the bucket taken from the {@linkplain #getFilledBuckets() filled buckets}
+     * @return {@code false} if the bucket has been discarded
+     */
+    public boolean requeueBucket(Bucket bucket) {
+        if (filledBuckets.offerFirst(bucket)) {
+            return true;
+        }
+        if (spill(bucket)) {
+            spilledBucketCount.incrementAndGet();
+            recycleBucket(bucket);
+            return true;
+        }
+        switch (overflowPolicy) {
+            case DISCARD_NEWEST:
+            case BLOCK:
+                Bucket newestBucket = filledBuckets.pollLast();
+                if (newestBucket != null) {
+                    discard(newestBucket);
+                    recycleBucket(newestBucket);
+                    if (filledBuckets.offerFirst(bucket)) {
+                        return true;
+                    }
+                }
+                break;
+            default:
+                // DISCARD_OLDEST and SAMPLE drop the oldest events, the ones of the requeued bucket
+        }
+        discard(bucket);
+        recycleBucket(bucket);
+        return false;
+    }
+
     /**
      * Return the filled buckets
      */
-    public BlockingDeque<ByteArrayOutputStream> getFilledBuckets() {
+    public BlockingDeque<Bucket> getFilledBuckets() {
         return filledBuckets;
     }
 
+    /**
+     * Defines the queue receiving the rolled buckets that don't fit in the filled buckets.
+     *
+     * @param spillQueue the spill queue, {@code null} to discard these buckets
+     */
+    public void setSpillQueue(MappedSpillQueue spillQueue) {
+        this.spillQueue = spillQueue;
+    }
+
+    public MappedSpillQueue getSpillQueue() {
+        return spillQueue;
+    }
+
+    public long getMaxBucketSizeInBytes() {
+        return maxBucketSizeInBytes;
+    }
+
+    /**
+     * Changes the size from which the active buckets are rolled, to tune the size of the posts at runtime.
+     *
+     * @param maxBucketSizeInBytes the new size, bounded by the max bucket size given at construction
+     */
+    public void setMaxBucketSizeInBytes(long maxBucketSizeInBytes) {
+        this.maxBucketSizeInBytes = Math.max(1, Math.min(maxBucketSizeInBytes, bucketCapacityInBytes));
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getBlockTimeoutMillis() {
+        return blockTimeoutMillis;
+    }
+
+    /**
+     * @param blockTimeoutMillis max time a writer waits for room with {@link OverflowPolicy#BLOCK}
+     */
+    public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate probability to keep a line while saturated with {@link OverflowPolicy#SAMPLE}
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getMaxEventSizeInBytes() {
+        return maxEventSizeInBytes;
+    }
+
+    /**
+     * @param maxEventSizeInBytes max size of a line written with {@link #writeLine(CharSequence)}, excluding its new
+     *                            line, {@code 0} for no limit. Must be greater than the size of
+     *                            {@link #TRUNCATION_MARKER}.
+     */
+    public void setMaxEventSizeInBytes(int maxEventSizeInBytes) {
+        if (maxEventSizeInBytes != 0 && maxEventSizeInBytes <= TRUNCATION_MARKER_BYTES.length) {
+            throw new IllegalArgumentException("'maxEventSizeInBytes' must be 0 or >" + TRUNCATION_MARKER_BYTES.length);
+        }
+        this.maxEventSizeInBytes = maxEventSizeInBytes;
+    }
+
+    public int getMaxRequestSizeInBytes() {
+        return maxRequestSizeInBytes;
+    }
+
+    /**
+     * @param maxRequestSizeInBytes max size of a bucket, buckets are rolled before a line that would exceed it,
+     *                              {@code 0} for no limit. Longer lines are truncated.
+     */
+    public void setMaxRequestSizeInBytes(int maxRequestSizeInBytes) {
+        if (maxRequestSizeInBytes != 0 && maxRequestSizeInBytes <= TRUNCATION_MARKER_BYTES.length + 1) {
+            throw new IllegalArgumentException("'maxRequestSizeInBytes' must be 0 or >" + (TRUNCATION_MARKER_BYTES.length + 1));
+        }
+        this.maxRequestSizeInBytes = maxRequestSizeInBytes;
+    }
+
+    /**
+     * @return the number of lines truncated to the max event size
+     */
+    public long getTruncatedEventCount() {
+        return truncatedEventCount.get();
+    }
+
+    /**
+     * @return the number of lines dropped while the given policy was in effect
+     */
+    public long getDroppedEventCount(OverflowPolicy policy) {
+        return droppedEventCounts.get(policy.ordinal());
+    }
+
+    /**
+     * @return the number of lines dropped, all policies included
+     */
+    public long getDroppedEventCount() {
+        long droppedEventCount = 0;
+        for (int i = 0; i < droppedEventCounts.length(); i++) {
+            droppedEventCount += droppedEventCounts.get(i);
+        }
+        return droppedEventCount;
+    }
+
+    /**
+     * @return Number of buckets spilled to disk. Monitoring oriented metric.
+     */
+    public int getSpilledBucketCount() {
+        return spilledBucketCount.get();
+    }
+
+    /**
+     * @return Byte size of the spilled buckets not yet removed. Monitoring oriented metric.
+     */
+    public long getSpillSizeInBytes() {
+        MappedSpillQueue spillQueue = this.spillQueue;
+        return spillQueue == null ? 0 : spillQueue.getSizeInBytes();
+    }
+
     /**
      * @return Number of discarded buckets. Monitoring oriented metric.
      */
@@ -226,22 +802,95 @@ public class DiscardingRollingOutputStream extends OutputStream {
         return discardedBucketCount.get();
     }
 
+    /**
+     * @return the number of bytes written in the buckets since creation, whether they were then sent, spilled or
+     * discarded
+     */
+    public long getWrittenBytes() {
+        return writtenBytes.sum();
+    }
+
     public long getCurrentOutputStreamSize() {
         long sizeInBytes = 0;
-        for (ByteArrayOutputStream bucket : filledBuckets) {
+        for (Bucket bucket : filledBuckets) {
             sizeInBytes += bucket.size();
         }
-        sizeInBytes += currentBucket.size();
+        return sizeInBytes + getCurrentBucketsSize();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the oldest line of the filled and active buckets, <code>0</code> if
+     * none. Buckets read back from disk are not accounted for.
+     */
+    public long getOldestEventNanos() {
+        long oldest = 0;
+        for (Bucket bucket : filledBuckets) {
+            oldest = oldest(oldest, bucket.getFirstEventNanos());
+        }
+        for (Stripe stripe : stripes) {
+            oldest = oldest(oldest, stripe.bucket.getFirstEventNanos());
+        }
+        return oldest;
+    }
+
+    private static long oldest(long nanos, long otherNanos) {
+        if (nanos == 0) {
+            return otherNanos;
+        }
+        return otherNanos == 0 || otherNanos - nanos > 0 ? nanos : otherNanos;
+    }
+
+    private long getCurrentBucketsSize() {
+        long sizeInBytes = 0;
+        for (Stripe stripe : stripes) {
+            sizeInBytes += stripe.bucket.size();
+        }
         return sizeInBytes;
     }
 
     @Override
     public String toString() {
         return "DiscardingRollingOutputStream{" +
-                "currentBucket.bytesWritten=" + currentBucket.size() +
+                "currentBuckets.bytesWritten=" + getCurrentBucketsSize() +
+                ", stripeCount=" + stripes.length +
                 ", filledBuckets.size=" + filledBuckets.size() +
                 ", discardedBucketCount=" + discardedBucketCount +
+                ", spilledBucketCount=" + spilledBucketCount +
+                ", overflowPolicy=" + overflowPolicy +
+                ", droppedEventCount=" + getDroppedEventCount() +
                 ", recycledBucketPool.size=" + recycledBucketPool.size() +
                 '}';
     }
+
+    /**
+     * Who rolls an active bucket, which decides what happens when there is no room for it.
+     */
+    private enum Roller {
+        /**
+         * A writer between two lines, which may wait for room with {@link OverflowPolicy#BLOCK}.
+         */
+        WRITER,
+        /**
+         * A writer in the middle of a line larger than a bucket, which must not let the other writers in.
+         */
+        WRITER_WITHIN_LINE,
+        /**
+         * The consumer, or anything else than a writer.
+         */
+        CONSUMER
+    }
+
+    /**
+     * An active bucket and the lock guarding it.
+     */
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        // signaled when the active bucket is rolled, for the writers waiting for room
+        private final Condition rolled = lock.newCondition();
+        private volatile Bucket bucket;
+
+        private Stripe(Bucket bucket) {
+            this.bucket = bucket;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link GZIPOutputStream} with a configurable compression level.
+ */
+public class GzipOutputStream extends GZIPOutputStream {
+
+    /**
+     * @param out the destination of the compressed bytes
+     * @param level the compression level, from 1 (fastest) to 9 (best compression)
+     * @throws IOException exception writing the GZIP header
+     */
+    public GzipOutputStream(OutputStream out, int level) throws IOException {
+        super(out, 8 * 1024);
+        def.setLevel(level);
+    }
+}
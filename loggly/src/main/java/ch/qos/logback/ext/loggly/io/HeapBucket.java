@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link Bucket} backed by a growing byte array, like a {@link java.io.ByteArrayOutputStream} without the
+ * synchronization.
+ */
+public class HeapBucket extends Bucket {
+
+    private byte[] buf;
+
+    private int count;
+
+    public HeapBucket() {
+        this(32);
+    }
+
+    /**
+     * @param initialCapacity initial size of the byte array
+     */
+    public HeapBucket(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Encodes the given characters directly in the backing array, one byte per character as long as they are ASCII.
+     */
+    @Override
+    public void writeUtf8(CharSequence chars, int start, int end) {
+        ensureCapacity(count + end - start);
+        byte[] buf = this.buf;
+        int pos = count;
+        int i = start;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[pos++] = (byte) c;
+        }
+        if (i < end) {
+            // at most 3 bytes per remaining char, supplementary code points take 4 bytes for 2 chars
+            ensureCapacity(pos + 3 * (end - i));
+            pos = Utf8.encode(chars, i, end, this.buf, pos);
+        }
+        count = pos;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dst) {
+        dst.put(buf, 0, count);
+    }
+
+    @Override
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void write(ByteBuffer src) {
+        int len = src.remaining();
+        ensureCapacity(count + len);
+        src.get(buf, count, len);
+        count += len;
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+        }
+    }
+}
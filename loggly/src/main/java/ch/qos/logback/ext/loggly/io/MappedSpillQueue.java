@@ -0,0 +1,437 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>
+ * FIFO queue of buckets spilled to memory-mapped segment files.
+ * </p>
+ * <p>
+ * Each segment file starts with a header holding a magic number, the write position and the read position, followed by
+ * records made of the length of the bucket and its content. Positions are updated in the mapped memory after each
+ * operation, so the operating system persists the state of the queue even if the JVM crashes, and the segments found in
+ * the directory are replayed when the queue is created. Nothing is forced to disk on the write path.
+ * </p>
+ * <p>
+ * Records are consumed in two steps: {@link #peek(Bucket)} copies the oldest record and {@link #remove()} discards it
+ * once it has been delivered. The directory must not be shared between several queues.
+ * </p>
+ * <p>
+ * Segment files with an invalid header, and segments holding a record whose length doesn't fit within the written
+ * records, are quarantined: renamed with the <code>.corrupt</code> suffix, so they are neither replayed nor counted
+ * in the max size, or deleted if they can't be renamed. The records following a corrupt length can't be delimited,
+ * so the rest of its segment is lost.
+ * </p>
+ * <p>
+ * The next segment file is created and mapped ahead of time, on the {@linkplain #setPreallocationExecutor(Executor)
+ * preallocation executor}, so that {@link #offer(Bucket)} only copies the bucket into mapped memory. A bucket offered
+ * while the next segment is not ready yet is rejected.
+ * </p>
+ */
+public class MappedSpillQueue implements Closeable {
+
+    private static final int MAGIC = 0x4c4f4731;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int WRITE_POSITION_OFFSET = 4;
+
+    private static final int READ_POSITION_OFFSET = 8;
+
+    private static final String SEGMENT_SUFFIX = ".spill";
+
+    private static final String QUARANTINE_SUFFIX = ".corrupt";
+
+    private final File directory;
+
+    private final int segmentSizeInBytes;
+
+    private final int maxSegmentCount;
+
+    private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+    private long nextSegmentSequence;
+
+    // next segment, created empty ahead of time, not yet part of the queue
+    private Segment spare;
+
+    private boolean preallocating;
+
+    private boolean closed;
+
+    private int quarantinedSegmentCount;
+
+    private volatile Executor preallocationExecutor;
+
+    private final Runnable preallocation = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                preallocate();
+            } catch (IOException e) {
+                // offer() rejects buckets until the next attempt succeeds
+            }
+        }
+    };
+
+    /**
+     * Opens the queue and loads the segments left in the directory.
+     *
+     * @param directory directory of the segment files, created if needed
+     * @param segmentSizeInBytes size of each segment file
+     * @param maxSizeInBytes maximum size of all the segment files
+     * @throws IOException exception creating the directory or mapping existing segments
+     */
+    public MappedSpillQueue(File directory, int segmentSizeInBytes, long maxSizeInBytes) throws IOException {
+        if (segmentSizeInBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("'segmentSizeInBytes' must be >" + HEADER_SIZE);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spill directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.maxSegmentCount = (int) Math.max(1, maxSizeInBytes / segmentSizeInBytes);
+
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            // zero-padded sequence numbers sort in creation order
+            Arrays.sort(files);
+            for (File file : files) {
+                Segment segment = Segment.open(file);
+                if (segment != null) {
+                    segments.addLast(segment);
+                } else {
+                    quarantine(file);
+                }
+            }
+            if (files.length > 0) {
+                // after the quarantined segments too, so that their names are not reused
+                String lastName = files[files.length - 1].getName();
+                nextSegmentSequence = Long.parseLong(lastName.substring(0, lastName.length() - SEGMENT_SUFFIX.length())) + 1;
+            }
+        }
+        preallocate();
+    }
+
+    /**
+     * @param preallocationExecutor executor creating the next segment once the current one is used, for example a
+     * sender thread; {@code null} to create it within {@link #offer(Bucket)}
+     */
+    public void setPreallocationExecutor(Executor preallocationExecutor) {
+        this.preallocationExecutor = preallocationExecutor;
+    }
+
+    /**
+     * Creates and maps the next segment file if there is none and the max size allows it. The file system is accessed
+     * without holding the lock of the queue.
+     *
+     * @throws IOException exception creating the segment file
+     */
+    public void preallocate() throws IOException {
+        File file;
+        synchronized (this) {
+            if (spare != null || preallocating || closed || segments.size() >= maxSegmentCount) {
+                return;
+            }
+            preallocating = true;
+            file = new File(directory, String.format("%019d", nextSegmentSequence++) + SEGMENT_SUFFIX);
+        }
+        Segment segment = null;
+        try {
+            segment = Segment.create(file, segmentSizeInBytes);
+        } finally {
+            synchronized (this) {
+                preallocating = false;
+                if (segment != null && closed) {
+                    segment.delete();
+                } else {
+                    spare = segment;
+                }
+            }
+        }
+    }
+
+    private void requestPreallocation() {
+        Executor preallocationExecutor = this.preallocationExecutor;
+        if (preallocationExecutor == null) {
+            preallocation.run();
+            return;
+        }
+        try {
+            preallocationExecutor.execute(preallocation);
+        } catch (RejectedExecutionException e) {
+            // stopping
+        }
+    }
+
+    /**
+     * Appends the content of the given bucket.
+     *
+     * @param bucket the bucket to spill
+     * @return {@code false} if the queue is full, the bucket is larger than a segment or the next segment is not ready
+     */
+    public synchronized boolean offer(Bucket bucket) {
+        int recordSize = 4 + bucket.size();
+        if (recordSize > segmentSizeInBytes - HEADER_SIZE) {
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.remaining() < recordSize) {
+            if (segments.size() >= maxSegmentCount) {
+                return false;
+            }
+            if (spare == null) {
+                requestPreallocation();
+                if (spare == null) {
+                    return false;
+                }
+            }
+            tail = spare;
+            spare = null;
+            segments.addLast(tail);
+            requestPreallocation();
+        }
+        int writePosition = tail.writePosition();
+        tail.buffer.putInt(writePosition, bucket.size());
+        tail.buffer.position(writePosition + 4);
+        bucket.writeTo(tail.buffer);
+        tail.buffer.putInt(WRITE_POSITION_OFFSET, writePosition + recordSize);
+        return true;
+    }
+
+    /**
+     * @return the byte size of the oldest record, {@code -1} if the queue is empty
+     */
+    public synchronized int peekSize() {
+        Segment head = head();
+        return head == null ? -1 : head.buffer.getInt(head.readPosition());
+    }
+
+    /**
+     * Copies the oldest record in the given bucket without removing it.
+     *
+     * @param bucket the destination, must have room for {@link #peekSize()} bytes
+     * @return {@code false} if the queue is empty
+     */
+    public synchronized boolean peek(Bucket bucket) throws IOException {
+        Segment head = head();
+        if (head == null) {
+            return false;
+        }
+        int readPosition = head.readPosition();
+        ByteBuffer record = head.buffer.duplicate();
+        record.limit(readPosition + 4 + head.buffer.getInt(readPosition));
+        record.position(readPosition + 4);
+        bucket.write(record);
+        return true;
+    }
+
+    /**
+     * Removes the oldest record, deleting its segment file once fully read.
+     */
+    public synchronized void remove() {
+        Segment head = head();
+        if (head == null) {
+            return;
+        }
+        int readPosition = head.readPosition();
+        head.buffer.putInt(READ_POSITION_OFFSET, readPosition + 4 + head.buffer.getInt(readPosition));
+        head();
+    }
+
+    /**
+     * Returns the first segment with unread records after releasing the fully read ones, and quarantining the ones
+     * whose next record is corrupt.
+     */
+    private Segment head() {
+        Segment head;
+        while ((head = segments.peekFirst()) != null) {
+            if (head.readPosition() != head.writePosition()) {
+                if (head.hasValidRecord()) {
+                    return head;
+                }
+                // the records after a corrupt length can't be delimited
+                quarantine(segments.pollFirst().file);
+            } else if (segments.size() == 1) {
+                // reuse the last segment instead of creating a new file
+                head.buffer.putInt(WRITE_POSITION_OFFSET, HEADER_SIZE);
+                head.buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+                return null;
+            } else {
+                segments.pollFirst().delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renames an invalid segment file out of the queue, or deletes it.
+     */
+    private void quarantine(File file) {
+        quarantinedSegmentCount++;
+        if (!file.renameTo(new File(file.getPath() + QUARANTINE_SUFFIX))) {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return the number of segment files quarantined because they were corrupt
+     */
+    public synchronized int getQuarantinedSegmentCount() {
+        return quarantinedSegmentCount;
+    }
+
+    /**
+     * @return the byte size of the records not yet removed
+     */
+    public synchronized long getSizeInBytes() {
+        long sizeInBytes = 0;
+        for (Segment segment : segments) {
+            sizeInBytes += segment.writePosition() - segment.readPosition();
+        }
+        return sizeInBytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return head() == null;
+    }
+
+    /**
+     * Flushes the segments to disk. Records not yet removed are replayed by the next queue opened on the directory.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        if (spare != null) {
+            spare.delete();
+            spare = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MappedSpillQueue{" +
+                "directory=" + directory +
+                ", segments=" + segments.size() +
+                ", sizeInBytes=" + getSizeInBytes() +
+                '}';
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(File file, int sizeInBytes) throws IOException {
+            MappedByteBuffer buffer = map(file, sizeInBytes);
+            buffer.putInt(WRITE_POSITION_OFFSET, HEADER_SIZE);
+            buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+            buffer.putInt(0, MAGIC);
+            return new Segment(file, buffer);
+        }
+
+        /**
+         * @return the segment, {@code null} if the file is not a valid segment
+         */
+        static Segment open(File file) throws IOException {
+            // the header is validated before mapping the file, which can't be renamed while mapped on some platforms
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                long length = raf.length();
+                if (length <= HEADER_SIZE || length > Integer.MAX_VALUE) {
+                    return null;
+                }
+                int magic = raf.readInt();
+                int writePosition = raf.readInt();
+                int readPosition = raf.readInt();
+                if (magic != MAGIC || readPosition < HEADER_SIZE || readPosition > writePosition || writePosition > length) {
+                    return null;
+                }
+                // the mapping stays valid after the channel is closed
+                return new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length));
+            } finally {
+                raf.close();
+            }
+        }
+
+        private static MappedByteBuffer map(File file, int sizeInBytes) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, sizeInBytes);
+            } finally {
+                // the mapping stays valid after the channel is closed
+                raf.close();
+            }
+        }
+
+        int writePosition() {
+            return buffer.getInt(WRITE_POSITION_OFFSET);
+        }
+
+        int readPosition() {
+            return buffer.getInt(READ_POSITION_OFFSET);
+        }
+
+        /**
+         * @return whether the length of the record at the read position fits within the written records
+         */
+        boolean hasValidRecord() {
+            int readPosition = readPosition();
+            int available = writePosition() - readPosition - 4;
+            if (readPosition < HEADER_SIZE || available < 0) {
+                return false;
+            }
+            int size = buffer.getInt(readPosition);
+            return size >= 0 && size <= available;
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition();
+        }
+
+        void delete() {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+/**
+ * What the {@link DiscardingRollingOutputStream} does when a bucket is rolled while the filled buckets are full and
+ * the bucket can't be spilled.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the rolled bucket, i.e. the newest events.
+     */
+    DISCARD_NEWEST,
+
+    /**
+     * Discard the oldest filled bucket to make room for the rolled one, keeping fresh events.
+     */
+    DISCARD_OLDEST,
+
+    /**
+     * Block the writing thread until a filled bucket is consumed, up to a timeout after which the rolled bucket is
+     * discarded. The full bucket stays the active bucket of its stripe while the writer waits, so the other writers of
+     * the stripe wait too and no bucket is allocated. The buckets of a line larger than a bucket are not waited for.
+     */
+    BLOCK,
+
+    /**
+     * While the filled buckets are full, only keep a random sample of the written lines. A rolled bucket is never
+     * discarded: while there is no room for it, it stays the active bucket and the lines that don't fit in it are
+     * dropped. Only a bucket that failed to be sent is discarded, when it can't be requeued, as the oldest one.
+     */
+    SAMPLE
+}
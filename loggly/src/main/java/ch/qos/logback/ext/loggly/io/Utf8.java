@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UTF-8 encoding of {@link CharSequence}s into buckets storage, without intermediate {@link String} or byte array.
+ * Unpaired surrogates are encoded as '?' like {@link String#getBytes(java.nio.charset.Charset)} does.
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * @return the number of bytes needed to encode the characters from index {@code from} to {@code to} (exclusive)
+     */
+    static int encodedLength(CharSequence chars, int from, int to) {
+        int bytes = to - from;
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the index of the end of the longest prefix of the characters before {@code to} whose encoding fits in
+     * {@code maxBytes}, never between the two chars of a surrogate pair
+     */
+    static int prefixLength(CharSequence chars, int to, int maxBytes) {
+        int bytes = 0;
+        int i = 0;
+        while (i < to) {
+            char c = chars.charAt(i);
+            int charCount = 1;
+            int charBytes;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                charCount = 2;
+                charBytes = 4;
+            } else if (Character.isSurrogate(c)) {
+                charBytes = 1;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                break;
+            }
+            bytes += charBytes;
+            i += charCount;
+        }
+        return i;
+    }
+
+    /**
+     * Encodes the characters from index {@code from} to {@code to} (exclusive). The destination must have room for
+     * 3 bytes per encoded character.
+     *
+     * @return the position in the destination after the last written byte
+     */
+    static int encode(CharSequence chars, int from, int to, byte[] dst, int pos) {
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                dst[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xc0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                dst[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                dst[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                dst[pos++] = '?';
+            } else {
+                dst[pos++] = (byte) (0xe0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                dst[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Encodes the characters from index {@code from} to {@code to} (exclusive) at the position of the destination
+     * buffer.
+     *
+     * @throws java.nio.BufferOverflowException if the destination buffer is too small
+     */
+    static void encode(CharSequence chars, int from, int to, ByteBuffer dst) {
+        for (int i = from; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                dst.put((byte) c);
+            } else if (c < 0x800) {
+                dst.put((byte) (0xc0 | (c >> 6)));
+                dst.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                dst.put((byte) (0xf0 | (codePoint >> 18)));
+                dst.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                dst.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                dst.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                dst.put((byte) '?');
+            } else {
+                dst.put((byte) (0xe0 | (c >> 12)));
+                dst.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                dst.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+}
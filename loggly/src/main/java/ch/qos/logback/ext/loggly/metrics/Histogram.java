@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Histogram of positive values in fixed memory, with the log-linear layout of HdrHistogram: values are counted in
+ * power of two ranges, each split in 32 sub-buckets, so the reported percentiles are within about 3% of the recorded
+ * values.
+ * </p>
+ * <p>
+ * Recording is lock-free: an atomic increment of the sub-bucket, plus an update of the max when it grows. Percentiles
+ * are computed over all the values recorded since the creation or the last {@linkplain #reset() reset} of the histogram:
+ * see {@link RollingHistogram} for percentiles over a recent window.
+ * </p>
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final long highestTrackableValue;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param highestTrackableValue larger values are recorded as this value
+     */
+    public Histogram(long highestTrackableValue) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("Invalid highest trackable value " + highestTrackableValue);
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as <code>0</code>
+     */
+    public void record(long value) {
+        long v = Math.max(0, Math.min(value, highestTrackableValue));
+        counts.incrementAndGet(indexOf(v));
+        totalCount.increment();
+        sum.add(v);
+        long currentMax;
+        while (v > (currentMax = max.get()) && !max.compareAndSet(currentMax, v)) {
+            // retry
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile from <code>0</code> to <code>100</code>
+     * @return the highest value equivalent to the value at the given percentile, <code>0</code> if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        return valueAtPercentile(addCountsTo(new long[counts.length()]), percentile, max.get());
+    }
+
+    /**
+     * Clears the recorded values. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Adds the counts of this histogram to the given counts, of a histogram of the same highest trackable value.
+     */
+    long[] addCountsTo(long[] snapshot) {
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] += counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param snapshot the counts of each index
+     * @param max the max recorded value
+     */
+    static long valueAtPercentile(long[] snapshot, double percentile, long max) {
+        long count = 0;
+        for (long c : snapshot) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long cumulated = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    int getLength() {
+        return counts.length();
+    }
+
+    /**
+     * Values below <code>2 * SUB_BUCKET_COUNT</code> have their own index, larger values share their index with the
+     * values of the same highest <code>SUB_BUCKET_BITS + 1</code> bits.
+     */
+    static int indexOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long highestValueAt(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Count and exponentially weighted moving averages over 1 and 5 minutes of the rate of an event, per second, as
+ * reported by the Unix load average.
+ * </p>
+ * <p>
+ * {@link #mark(long)} is lock-free. The averages are updated by {@link #tick()}, to be invoked every
+ * {@link #TICK_INTERVAL_IN_SECONDS} seconds by a single thread.
+ * </p>
+ */
+public class Meter {
+
+    public static final int TICK_INTERVAL_IN_SECONDS = 5;
+
+    private static final double ONE_MINUTE_ALPHA = 1 - Math.exp(-TICK_INTERVAL_IN_SECONDS / 60.0);
+
+    private static final double FIVE_MINUTES_ALPHA = 1 - Math.exp(-TICK_INTERVAL_IN_SECONDS / 300.0);
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Count at the previous tick, only accessed by the ticking thread.
+     */
+    private long lastTickCount;
+
+    private volatile boolean initialized;
+
+    private volatile double oneMinuteRate;
+
+    private volatile double fiveMinutesRate;
+
+    public void mark(long n) {
+        count.add(n);
+    }
+
+    /**
+     * Updates the averages with the events marked since the previous tick.
+     */
+    public void tick() {
+        // sumThenReset() would lose the marks added between the sum and the reset
+        long tickCount = count.sum();
+        double instantRate = (double) (tickCount - lastTickCount) / TICK_INTERVAL_IN_SECONDS;
+        lastTickCount = tickCount;
+        if (initialized) {
+            oneMinuteRate += ONE_MINUTE_ALPHA * (instantRate - oneMinuteRate);
+            fiveMinutesRate += FIVE_MINUTES_ALPHA * (instantRate - fiveMinutesRate);
+        } else {
+            oneMinuteRate = instantRate;
+            fiveMinutesRate = instantRate;
+            initialized = true;
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the average rate per second over the last minute
+     */
+    public double getOneMinuteRate() {
+        return oneMinuteRate;
+    }
+
+    /**
+     * @return the average rate per second over the last 5 minutes
+     */
+    public double getFiveMinutesRate() {
+        return fiveMinutesRate;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+/**
+ * <p>
+ * {@link Histogram} of the values recorded over the last one to two windows of {@link #WINDOW_IN_SECONDS} seconds, so
+ * that its percentiles follow the current conditions rather than the whole uptime.
+ * </p>
+ * <p>
+ * Values are recorded in the current of two histograms. {@link #tick()}, to be invoked every
+ * {@link #WINDOW_IN_SECONDS} seconds by a single thread, clears the previous one and makes it the current one.
+ * Percentiles and max are computed over both.
+ * </p>
+ */
+public class RollingHistogram {
+
+    public static final int WINDOW_IN_SECONDS = 60;
+
+    private final Histogram[] windows;
+
+    private volatile int current;
+
+    /**
+     * @param highestTrackableValue larger values are recorded as this value
+     */
+    public RollingHistogram(long highestTrackableValue) {
+        this.windows = new Histogram[]{new Histogram(highestTrackableValue), new Histogram(highestTrackableValue)};
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as <code>0</code>
+     */
+    public void record(long value) {
+        windows[current].record(value);
+    }
+
+    /**
+     * Drops the values of the older window.
+     */
+    public void tick() {
+        int next = 1 - current;
+        windows[next].reset();
+        current = next;
+    }
+
+    public long getTotalCount() {
+        return windows[0].getTotalCount() + windows[1].getTotalCount();
+    }
+
+    public long getMax() {
+        return Math.max(windows[0].getMax(), windows[1].getMax());
+    }
+
+    /**
+     * @param percentile from <code>0</code> to <code>100</code>
+     * @return the highest value equivalent to the value at the given percentile, <code>0</code> if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = windows[1].addCountsTo(windows[0].addCountsTo(new long[windows[0].getLength()]));
+        return Histogram.valueAtPercentile(snapshot, percentile, getMax());
+    }
+}
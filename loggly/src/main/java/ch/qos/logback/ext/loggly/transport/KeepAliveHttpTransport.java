@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.transport;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * <p>
+ * Default {@link LogglyTransport} relying on the keep-alive connection pool of {@link HttpURLConnection}: connections
+ * are never {@linkplain HttpURLConnection#disconnect() disconnected} after a successful post and their response is
+ * fully read, so the next post to the same endpoint reuses the TCP connection and TLS session instead of paying for
+ * new handshakes.
+ * </p>
+ * <p>
+ * The pool keeps up to <code>http.maxConnections</code> (system property, default <code>5</code>) idle connections
+ * per endpoint, for the keep-alive duration advertised by the server (default 5 seconds). Posts sent concurrently
+ * beyond that number open new connections, so <code>http.maxConnections</code> must be at least the number of
+ * threads posting to the endpoint, e.g. <code>-Dhttp.maxConnections=8</code> with 8 <code>senderThreads</code>. The
+ * property is read once by the JVM, when the first connection is kept alive.
+ * </p>
+ * <p>
+ * New and reused connections are only counted over TLS, where they are measured by the TLS handshakes.
+ * {@link HttpURLConnection} doesn't tell whether it reused a plain HTTP connection, so these are not counted.
+ * </p>
+ */
+public class KeepAliveHttpTransport implements LogglyTransport {
+
+    private final AtomicLong secureConnectionCount = new AtomicLong();
+
+    // a single factory instance, connections created by another factory are not reused
+    private volatile CountingSSLSocketFactory sslSocketFactory;
+
+    @Override
+    public HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) (proxy == null ? url.openConnection() : url.openConnection(proxy));
+        if (connection instanceof HttpsURLConnection) {
+            HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+            httpsConnection.setSSLSocketFactory(getSSLSocketFactory(httpsConnection));
+            secureConnectionCount.incrementAndGet();
+        }
+        return connection;
+    }
+
+    private CountingSSLSocketFactory getSSLSocketFactory(HttpsURLConnection connection) {
+        CountingSSLSocketFactory sslSocketFactory = this.sslSocketFactory;
+        if (sslSocketFactory == null) {
+            synchronized (this) {
+                sslSocketFactory = this.sslSocketFactory;
+                if (sslSocketFactory == null) {
+                    sslSocketFactory = new CountingSSLSocketFactory(connection.getSSLSocketFactory());
+                    this.sslSocketFactory = sslSocketFactory;
+                }
+            }
+        }
+        return sslSocketFactory;
+    }
+
+    @Override
+    public void releaseConnection(HttpURLConnection connection, boolean reusable) {
+        // a connection returns to the pool once its response body has been read to the end and closed
+        if (!reusable) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return the max number of idle connections kept alive per endpoint by the pool of {@link HttpURLConnection},
+     * i.e. the <code>http.maxConnections</code> system property, <code>5</code> by default
+     */
+    public static int getMaxIdleConnectionsPerEndpoint() {
+        int maxConnections = Integer.getInteger("http.maxConnections", 5);
+        return maxConnections > 0 ? maxConnections : 5;
+    }
+
+    @Override
+    public long getSecureConnectionCount() {
+        return secureConnectionCount.get();
+    }
+
+    @Override
+    public long getHandshakeCount() {
+        CountingSSLSocketFactory sslSocketFactory = this.sslSocketFactory;
+        return sslSocketFactory == null ? 0 : sslSocketFactory.getCreatedSocketCount();
+    }
+
+    @Override
+    public long getNewConnectionCount() {
+        return getHandshakeCount();
+    }
+
+    @Override
+    public long getReusedConnectionCount() {
+        return Math.max(0, secureConnectionCount.get() - getHandshakeCount());
+    }
+
+    @Override
+    public void close() {
+        // idle connections are closed by the pool
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.transport;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * <p>
+ * Provides the HTTP connections used by the Loggly appenders to post logs.
+ * </p>
+ * <p>
+ * For each post, appenders {@linkplain #openConnection(URL, Proxy) open} a connection, write the request, read the
+ * response body to the end and close it, then {@linkplain #releaseConnection(HttpURLConnection, boolean) release} the
+ * connection.
+ * Implementations must be thread safe.
+ * </p>
+ */
+public interface LogglyTransport {
+
+    /**
+     * @param url   the Loggly endpoint
+     * @param proxy the proxy to use, {@code null} for the JVM proxy settings
+     * @return a connection, not yet connected
+     * @throws IOException exception opening the connection
+     */
+    HttpURLConnection openConnection(URL url, Proxy proxy) throws IOException;
+
+    /**
+     * Invoked once the response body has been read and closed, or after a failure.
+     *
+     * @param connection the connection returned by {@link #openConnection(URL, Proxy)}
+     * @param reusable   {@code false} if the connection failed and must not be reused
+     */
+    void releaseConnection(HttpURLConnection connection, boolean reusable);
+
+    /**
+     * @return the number of connections opened over TLS, new or reused
+     */
+    long getSecureConnectionCount();
+
+    /**
+     * @return the number of TLS handshakes, i.e. secure connections that could not be reused
+     */
+    long getHandshakeCount();
+
+    /**
+     * @return the number of connections opened that could not reuse a kept alive connection, as measured by the
+     * transport, e.g. over TLS only
+     */
+    long getNewConnectionCount();
+
+    /**
+     * @return the number of connections opened that reused a kept alive connection, as measured by the transport,
+     * e.g. over TLS only
+     */
+    long getReusedConnectionCount();
+
+    /**
+     * Releases the resources of this transport when the appender stops.
+     */
+    void close();
+}
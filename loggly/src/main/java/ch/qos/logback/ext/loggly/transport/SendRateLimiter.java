@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Token bucket limiting the posts sent to Loggly, in bytes per second and in requests per second. Each bucket holds up
+ * to one second of tokens, so bursts are bounded by the rates.
+ * </p>
+ * <p>
+ * A post larger than one second of bytes is let through as soon as the bucket is full, the tokens then go negative
+ * so that the following posts wait for the debt to be paid back.
+ * </p>
+ */
+public class SendRateLimiter {
+
+    private final long bytesPerSecond;
+
+    private final long requestsPerSecond;
+
+    private double availableBytes;
+
+    private double availableRequests;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param bytesPerSecond max bytes sent per second, <code>0</code> for no limit
+     * @param requestsPerSecond max posts per second, <code>0</code> for no limit
+     */
+    public SendRateLimiter(long bytesPerSecond, long requestsPerSecond) {
+        if (bytesPerSecond < 0 || requestsPerSecond < 0) {
+            throw new IllegalArgumentException("Negative rate: " + bytesPerSecond + " bytes/s, " + requestsPerSecond + " requests/s");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.requestsPerSecond = requestsPerSecond;
+        this.availableBytes = bytesPerSecond;
+        this.availableRequests = requestsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes the tokens to send a post of the given size, if both buckets have enough of them.
+     *
+     * @param bytes size of the post
+     * @return <code>0</code> if the post can be sent, otherwise the time to wait in nanoseconds before enough tokens
+     * are available, no token is then taken
+     */
+    public synchronized long tryAcquire(long bytes) {
+        refill(System.nanoTime());
+        long waitNanos = Math.max(
+                waitNanos(availableBytes, Math.min(bytes, bytesPerSecond), bytesPerSecond),
+                waitNanos(availableRequests, 1, requestsPerSecond));
+        if (waitNanos > 0) {
+            return waitNanos;
+        }
+        if (bytesPerSecond > 0) {
+            availableBytes -= bytes;
+        }
+        if (requestsPerSecond > 0) {
+            availableRequests -= 1;
+        }
+        return 0;
+    }
+
+    private static long waitNanos(double available, long needed, long ratePerSecond) {
+        if (ratePerSecond == 0 || available >= needed) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((needed - available) * TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    }
+
+    private void refill(long nowNanos) {
+        double elapsedSeconds = (nowNanos - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastRefillNanos = nowNanos;
+        availableBytes = Math.min(bytesPerSecond, availableBytes + elapsedSeconds * bytesPerSecond);
+        availableRequests = Math.min(requestsPerSecond, availableRequests + elapsedSeconds * requestsPerSecond);
+    }
+
+    /**
+     * Byte tokens currently available, <code>0</code> while paying back a large post, <code>-1</code> without byte
+     * limit.
+     */
+    public synchronized long getAvailableBytes() {
+        if (bytesPerSecond == 0) {
+            return -1;
+        }
+        refill(System.nanoTime());
+        return Math.max(0, (long) availableBytes);
+    }
+
+    /**
+     * Request tokens currently available, <code>-1</code> without request limit.
+     */
+    public synchronized long getAvailableRequests() {
+        if (requestsPerSecond == 0) {
+            return -1;
+        }
+        refill(System.nanoTime());
+        return (long) availableRequests;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+}
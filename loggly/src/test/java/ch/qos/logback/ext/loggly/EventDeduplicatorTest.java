@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Tests the {@link EventDeduplicator}.
+ */
+public class EventDeduplicatorTest {
+
+  private final LoggerContext context = new LoggerContext();
+  private final Logger logger = context.getLogger(EventDeduplicatorTest.class);
+  private final List<ILoggingEvent> summaries = new ArrayList<ILoggingEvent>();
+  private final EventDeduplicator.SummarySink sink = new EventDeduplicator.SummarySink() {
+    @Override
+    public void append(ILoggingEvent summary) {
+      summaries.add(summary);
+    }
+  };
+
+  @Test
+  public void dropsRepetitionsWithinWindow() {
+    EventDeduplicator deduplicator = new EventDeduplicator(16, 1000);
+
+    assertTrue(deduplicator.accept(event(Level.ERROR, "failed {}", 1000, 1), sink));
+    assertFalse(deduplicator.accept(event(Level.ERROR, "failed {}", 1100, 2), sink));
+    assertFalse(deduplicator.accept(event(Level.ERROR, "failed {}", 1200, 3), sink));
+    assertTrue(deduplicator.accept(event(Level.WARN, "failed {}", 1200, 4), sink));
+
+    deduplicator.flushExpired(1500, sink);
+    assertTrue(summaries.isEmpty());
+    deduplicator.flushExpired(2000, sink);
+
+    assertEquals(1, summaries.size());
+    assertEquals("Repeated 2 times: failed {}", summaries.get(0).getFormattedMessage());
+    assertEquals(Level.ERROR, summaries.get(0).getLevel());
+    assertEquals(2, deduplicator.getSuppressedEventCount());
+    assertEquals(1, deduplicator.getSummaryEventCount());
+  }
+
+  @Test
+  public void expiredWindowReportsBeforeNextOccurrence() {
+    EventDeduplicator deduplicator = new EventDeduplicator(16, 1000);
+
+    deduplicator.accept(event(Level.ERROR, "failed", 1000), sink);
+    deduplicator.accept(event(Level.ERROR, "failed", 1500), sink);
+
+    assertTrue(deduplicator.accept(event(Level.ERROR, "failed", 2500), sink));
+    assertEquals(1, summaries.size());
+    assertEquals(2500, summaries.get(0).getTimeStamp());
+  }
+
+  @Test
+  public void collidingEventClosesWindow() {
+    EventDeduplicator deduplicator = new EventDeduplicator(1, 1000);
+
+    deduplicator.accept(event(Level.ERROR, "first", 1000), sink);
+    deduplicator.accept(event(Level.ERROR, "first", 1000), sink);
+
+    assertTrue(deduplicator.accept(event(Level.ERROR, "second", 1000), sink));
+    assertEquals("Repeated 1 times: first", summaries.get(0).getFormattedMessage());
+
+    deduplicator.flushAll(sink);
+    assertEquals(1, summaries.size());
+  }
+
+  @Test
+  public void summaryCanBeLaidOutWithCallerData() {
+    EventDeduplicator deduplicator = new EventDeduplicator(16, 1000);
+    deduplicator.accept(event(Level.ERROR, "failed", 1000), sink);
+    deduplicator.accept(event(Level.ERROR, "failed", 1100), sink);
+    deduplicator.flushAll(sink);
+
+    PatternLayout layout = new PatternLayout();
+    layout.setContext(context);
+    layout.setPattern("%file:%line %caller{1} %msg");
+    layout.start();
+
+    assertTrue(layout.doLayout(summaries.get(0)).endsWith("Repeated 1 times: failed"));
+  }
+
+  private LoggingEvent event(Level level, String pattern, long timestamp, Object... args) {
+    LoggingEvent event = new LoggingEvent(getClass().getName(), logger, level, pattern, null, args);
+    event.setTimeStamp(timestamp);
+    return event;
+  }
+}
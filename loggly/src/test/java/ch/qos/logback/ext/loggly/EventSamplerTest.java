@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Tests the rules of the {@link EventSampler}.
+ */
+public class EventSamplerTest {
+
+  private final LoggerContext context = new LoggerContext();
+
+  @Test
+  public void keepsRatioOfMatchingEvents() {
+    EventSampler sampler = EventSampler.parse("com.example.chatty:DEBUG=0.01");
+
+    int kept = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (!sampler.isSampledOut(event("com.example.chatty.Client", Level.DEBUG, i), 1)) {
+        kept++;
+      }
+    }
+
+    assertTrue(String.valueOf(kept), kept > 500 && kept < 1500);
+    assertFalse(sampler.isSampledOut(event("com.example.chatty.Client", Level.ERROR, 0), 1));
+    assertFalse(sampler.isSampledOut(event("com.example.chattyOther", Level.DEBUG, 0), 1));
+  }
+
+  @Test
+  public void firstMatchingRuleApplies() {
+    EventSampler sampler = EventSampler.parse("com.example:WARN=1, *=0");
+
+    assertFalse(sampler.isSampledOut(event("com.example.Service", Level.INFO, 0), 1));
+    assertTrue(sampler.isSampledOut(event("com.example.Service", Level.ERROR, 0), 1));
+    assertTrue(sampler.isSampledOut(event("org.example.Service", Level.INFO, 0), 1));
+  }
+
+  @Test
+  public void overloadRatioAppliesOnTopOfRules() {
+    EventSampler sampler = EventSampler.parse(":DEBUG=0.5");
+
+    assertTrue(sampler.isSampledOut(event("com.example.Service", Level.INFO, 0), 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRatioOutOfRange() {
+    EventSampler.parse("com.example=2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownLevel() {
+    EventSampler.parse("com.example:VERBOSE=0.5");
+  }
+
+  private LoggingEvent event(String loggerName, Level level, long timestamp) {
+    Logger logger = context.getLogger(loggerName);
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, level, "message " + timestamp, null, null);
+    event.setTimeStamp(timestamp);
+    return event;
+  }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.transport.LogglyTransport;
+
+/**
+ * Tests the non-blocking mode of the {@link LogglyAppender}.
+ */
+public class LogglyAppenderNonBlockingTest {
+
+  private final List<String> posts = new CopyOnWriteArrayList<String>();
+  private final List<URL> urls = new CopyOnWriteArrayList<URL>();
+  // holds the responses of Loggly
+  private final CountDownLatch loggly = new CountDownLatch(1);
+  private LogglyAppender<String> appender;
+
+  @Before
+  public void before() {
+    appender = new LogglyAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setInputKey("key");
+    appender.setLayout(new EchoLayout<String>());
+    appender.setTransport(new StubTransport());
+    appender.setNonBlocking(true);
+  }
+
+  @Test
+  public void postsQueuedMessagesInOneRequestWithoutBlocking() throws Exception {
+    appender.start();
+
+    long nanosBefore = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      appender.doAppend("message " + i);
+    }
+    assertTrue(System.nanoTime() - nanosBefore < TimeUnit.SECONDS.toNanos(1));
+
+    loggly.countDown();
+    appender.stop();
+
+    StringBuilder received = new StringBuilder();
+    for (String post : posts) {
+      received.append(post);
+    }
+    assertTrue(posts.size() < 100);
+    assertEquals(100, received.toString().split("\n").length);
+    assertTrue(received.toString().startsWith("message 0\n"));
+    assertEquals("/bulk/key", urls.get(0).getPath());
+    assertEquals(0, appender.getQueueDroppedEventsCount());
+  }
+
+  @Test
+  public void dropsNewestMessagesWhenQueueIsFull() throws Exception {
+    appender.setQueueSize(2);
+    appender.start();
+
+    // the sender waits for the response to the first message, two more fill the queue
+    for (int i = 0; i < 10; i++) {
+      appender.doAppend("message " + i);
+    }
+    assertTrue(appender.getQueueDroppedEventsCount() >= 7);
+
+    loggly.countDown();
+    appender.stop();
+    assertEquals(0, appender.getQueuedEventsCount());
+  }
+
+  @Test
+  public void postsMessagesQueuedWhileStopping() throws Exception {
+    appender.setQueueSize(2);
+    appender.setQueueFullPolicy("BLOCK");
+    appender.setQueueBlockTimeoutMillis(60000);
+    appender.start();
+    loggly.countDown();
+
+    final CountDownLatch appending = new CountDownLatch(100);
+    // appends like a logging thread that passed the started check before stop()
+    Thread logging = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 1000; i++) {
+          appender.append("message " + i);
+          appending.countDown();
+        }
+      }
+    });
+    logging.start();
+    appending.await();
+    appender.stop();
+    logging.join(10000);
+
+    assertFalse(logging.isAlive());
+    StringBuilder received = new StringBuilder();
+    for (String post : posts) {
+      received.append(post);
+    }
+    assertEquals(1000, received.toString().split("\n").length);
+    assertEquals(0, appender.getQueueDroppedEventsCount());
+    assertEquals(0, appender.getQueuedEventsCount());
+  }
+
+  @Test
+  public void keepsSingleEventEndpointByDefault() throws Exception {
+    appender.setNonBlocking(false);
+    appender.start();
+    loggly.countDown();
+
+    appender.doAppend("message");
+    appender.stop();
+
+    assertEquals("/inputs/key", urls.get(0).getPath());
+    assertEquals("message", posts.get(0).trim());
+  }
+
+  private class StubTransport implements LogglyTransport {
+    @Override
+    public HttpURLConnection openConnection(URL url, Proxy proxy) {
+      urls.add(url);
+      return new StubConnection(url);
+    }
+
+    @Override
+    public void releaseConnection(HttpURLConnection connection, boolean reusable) {
+    }
+
+    @Override
+    public long getSecureConnectionCount() {
+      return 0;
+    }
+
+    @Override
+    public long getHandshakeCount() {
+      return 0;
+    }
+
+    @Override
+    public long getNewConnectionCount() {
+      return 0;
+    }
+
+    @Override
+    public long getReusedConnectionCount() {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private class StubConnection extends HttpURLConnection {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    StubConnection(URL url) {
+      super(url);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return body;
+    }
+
+    @Override
+    public int getResponseCode() {
+      try {
+        loggly.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      posts.add(new String(body.toByteArray(), AbstractLogglyAppender.UTF_8));
+      return HTTP_OK;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+  }
+}
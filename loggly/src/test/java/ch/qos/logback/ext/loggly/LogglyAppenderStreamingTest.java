@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+
+/**
+ * Tests the streaming mode of the {@link LogglyAppender} against a local HTTP server reading the uploads as they
+ * arrive.
+ */
+public class LogglyAppenderStreamingTest {
+
+  private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+  private final AtomicInteger completedUploads = new AtomicInteger();
+  private final AtomicInteger responseCode = new AtomicInteger(200);
+  private HttpServer server;
+  private LogglyAppender<String> appender;
+
+  @Before
+  public void before() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lines.add(line);
+        }
+        completedUploads.incrementAndGet();
+        exchange.sendResponseHeaders(responseCode.get(), -1);
+        exchange.close();
+      }
+    });
+    server.start();
+
+    appender = new LogglyAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl("http://localhost:" + server.getAddress().getPort() + "/bulk/key");
+    appender.setLayout(new EchoLayout<String>());
+    appender.setStreaming(true);
+  }
+
+  @After
+  public void after() {
+    server.stop(0);
+  }
+
+  @Test
+  public void messagesArriveBeforeUploadCompletes() throws Exception {
+    appender.setStreamMaxAgeMillis(60000);
+    appender.start();
+
+    appender.doAppend("first");
+    assertEquals("first", lines.poll(5, TimeUnit.SECONDS));
+    appender.doAppend("second");
+    assertEquals("second", lines.poll(5, TimeUnit.SECONDS));
+    assertEquals(0, completedUploads.get());
+
+    appender.stop();
+    assertEquals(1, completedUploads.get());
+    assertEquals(1, appender.getSentRequestsCount());
+  }
+
+  @Test
+  public void rotatesUploadBySize() throws Exception {
+    appender.setMaxRequestSizeBytes(100);
+    appender.start();
+
+    for (int i = 0; i < 50; i++) {
+      appender.doAppend("message " + i);
+    }
+    appender.stop();
+
+    assertEquals(50, lines.size());
+    assertTrue(completedUploads.get() >= 5);
+    assertEquals(completedUploads.get(), appender.getSentRequestsCount());
+  }
+
+  @Test
+  public void sendsMessagesAppendedWhileStopping() throws Exception {
+    appender.setQueueSize(2);
+    appender.setQueueFullPolicy("BLOCK");
+    appender.setQueueBlockTimeoutMillis(60000);
+    appender.start();
+
+    final CountDownLatch appending = new CountDownLatch(100);
+    // appends like a logging thread that passed the started check before stop()
+    Thread logging = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 1000; i++) {
+          appender.append("message " + i);
+          appending.countDown();
+        }
+      }
+    });
+    logging.start();
+    assertTrue(appending.await(10, TimeUnit.SECONDS));
+    appender.stop();
+    logging.join(10000);
+
+    assertFalse(logging.isAlive());
+    assertEquals(1000, lines.size());
+    assertEquals(0, appender.getQueueDroppedEventsCount());
+    assertEquals(0, appender.getQueuedEventsCount());
+  }
+
+  @Test
+  public void backsOffAfterFailedUpload() throws Exception {
+    responseCode.set(503);
+    appender.setStreamMaxAgeMillis(50);
+    appender.setRetryInitialBackoffMillis(60000);
+    appender.setRetryMaxBackoffMillis(60000);
+    appender.start();
+
+    appender.doAppend("first");
+    awaitCompletedUploads(1);
+    for (int i = 0; i < 20; i++) {
+      appender.doAppend("message " + i);
+      Thread.sleep(10);
+    }
+
+    // no new upload is opened to the failing endpoint until the end of the backoff
+    assertEquals(1, appender.getSentRequestsCount());
+    assertEquals(20, appender.getQueuedEventsCount());
+
+    responseCode.set(200);
+    appender.stop();
+    assertEquals(21, lines.size());
+    assertEquals(0, appender.getQueuedEventsCount());
+  }
+
+  @Test
+  public void rotatesUploadByAge() throws Exception {
+    appender.setStreamMaxAgeMillis(200);
+    appender.start();
+
+    appender.doAppend("message");
+    assertEquals("message", lines.poll(5, TimeUnit.SECONDS));
+    awaitCompletedUploads(1);
+    assertEquals(1, completedUploads.get());
+
+    appender.stop();
+  }
+
+  private void awaitCompletedUploads(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (completedUploads.get() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
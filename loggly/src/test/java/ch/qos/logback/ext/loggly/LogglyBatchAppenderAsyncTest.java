@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.LayoutBase;
+import ch.qos.logback.ext.loggly.io.IoUtils;
+
+/**
+ * Tests the async mode of the {@link LogglyBatchAppender}.
+ */
+public class LogglyBatchAppenderAsyncTest {
+
+  private final BlockingQueue<String> posts = new LinkedBlockingQueue<String>();
+  private final CountDownLatch layoutLatch = new CountDownLatch(1);
+  private final LoggerContext context = new LoggerContext();
+  private final Logger logger = context.getLogger(LogglyBatchAppenderAsyncTest.class);
+  private LogglyBatchAppender<ILoggingEvent> appender;
+
+  @Before
+  public void before() {
+    appender = new LogglyBatchAppender<ILoggingEvent>() {
+      @Override
+      protected void processLogEntries(InputStream in) {
+        try {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          IoUtils.copy(in, out);
+          posts.add(out.toString("UTF-8"));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    appender.setContext(context);
+    appender.setEndpointUrl("http://localhost/");
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setAsync(true);
+    // renders the thread laying out the event and the thread which logged it
+    LayoutBase<ILoggingEvent> layout = new LayoutBase<ILoggingEvent>() {
+      @Override
+      public String doLayout(ILoggingEvent event) {
+        try {
+          layoutLatch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return Thread.currentThread().getName() + " " + event.getThreadName() + " " + event.getFormattedMessage() + "\n";
+      }
+    };
+    layout.setContext(context);
+    appender.setLayout(layout);
+  }
+
+  @Test
+  public void layoutRunsOnWorkerWithLoggingThreadData() throws Exception {
+    appender.start();
+    layoutLatch.countDown();
+    String thread = Thread.currentThread().getName();
+
+    appender.doAppend(event("hello {}", "async"));
+    // stop() lays out on the calling thread what the worker has not taken yet
+    long deadline = System.currentTimeMillis() + 10000;
+    while (appender.getAppendedEventsCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    appender.stop();
+
+    assertEquals("logback-loggly-async " + thread + " hello async\n", posts.poll(10, TimeUnit.SECONDS));
+    assertEquals(1, appender.getAppendedEventsCount());
+  }
+
+  @Test
+  public void discardsWhenFullWithDiscardPolicy() throws Exception {
+    appender.setAsyncBufferSize(2);
+    appender.setAsyncFullPolicy("discard");
+    appender.start();
+
+    // the worker blocks on the layout of the first event, two more fill the ring buffer
+    for (int i = 0; i < 10; i++) {
+      appender.doAppend(event("event {}", i));
+    }
+    assertTrue(appender.getAsyncDiscardedEventsCount() >= 7);
+
+    layoutLatch.countDown();
+    appender.stop();
+    assertEquals(10 - appender.getAsyncDiscardedEventsCount(), appender.getAppendedEventsCount());
+  }
+
+  @Test
+  public void runsInCallerWhenFull() throws Exception {
+    appender.setAsyncBufferSize(1);
+    appender.setAsyncFullPolicy("RUN_IN_CALLER");
+    appender.start();
+
+    layoutLatch.countDown();
+    for (int i = 0; i < 1000; i++) {
+      appender.doAppend(event("event {}", i));
+    }
+    appender.stop();
+
+    assertEquals(1000, appender.getAppendedEventsCount());
+    assertEquals(0, appender.getAsyncDiscardedEventsCount());
+  }
+
+  private ILoggingEvent event(String message, Object argument) {
+    return new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, null, new Object[]{argument});
+  }
+}
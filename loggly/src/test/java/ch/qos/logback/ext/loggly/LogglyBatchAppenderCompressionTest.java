@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.testing.FakeBulkEndpoint;
+
+/**
+ * Tests the gzip compression of the posts of the {@link LogglyBatchAppender}.
+ */
+public class LogglyBatchAppenderCompressionTest {
+
+  private final FakeBulkEndpoint endpoint = new FakeBulkEndpoint();
+  private LogglyBatchAppender<String> appender;
+
+  @Before
+  public void before() throws IOException {
+    endpoint.setRecordBodies(true);
+    endpoint.start();
+
+    appender = new LogglyBatchAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl(endpoint.getEndpointUrl());
+    appender.setLayout(new EchoLayout<String>());
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setMaxBucketSizeInKilobytes(4);
+    appender.setCompression("gzip");
+    appender.start();
+  }
+
+  @After
+  public void after() {
+    endpoint.stop();
+  }
+
+  @Test
+  public void postsGzipBodiesOfTheBufferedLines() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 500; i++) {
+      String message = "message " + i + " of a compressible log line";
+      expected.add(message);
+      appender.doAppend(message);
+    }
+    // sends the remaining buckets synchronously
+    appender.stop();
+
+    // rolled buckets may be posted concurrently by the sender and by stop()
+    List<String> received = new ArrayList<String>();
+    for (byte[] body : endpoint.getAcceptedBodies()) {
+      String lines = new String(body, "UTF-8");
+      assertTrue(lines.endsWith("\n"));
+      received.addAll(Arrays.asList(lines.split("\n")));
+    }
+    Collections.sort(expected);
+    Collections.sort(received);
+    assertEquals(expected, received);
+
+    // several buckets of 4 KB, all compressed
+    assertTrue(appender.getSendSuccessCount() > 1);
+    assertEquals(appender.getSendSuccessCount(), endpoint.getAcceptedGzipRequestCount());
+    assertEquals(endpoint.getAcceptedBytes(), appender.getSentBytesBeforeCompression());
+    assertEquals(endpoint.getAcceptedCompressedBytes(), appender.getSentBytesAfterCompression());
+    assertTrue(appender.getSentBytesAfterCompression() < appender.getSentBytesBeforeCompression());
+  }
+}
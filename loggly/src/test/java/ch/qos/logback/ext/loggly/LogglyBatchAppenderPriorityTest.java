@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.ext.loggly.io.IoUtils;
+
+/**
+ * Tests the reserved buffer of priority events of the {@link LogglyBatchAppender}.
+ */
+public class LogglyBatchAppenderPriorityTest {
+
+  private final BlockingQueue<String> posts = new LinkedBlockingQueue<String>();
+  private final CountDownLatch loggly = new CountDownLatch(1);
+  private final LoggerContext context = new LoggerContext();
+  private final Logger logger = context.getLogger(LogglyBatchAppenderPriorityTest.class);
+  private LogglyBatchAppender<ILoggingEvent> appender;
+
+  @Before
+  public void before() {
+    appender = new LogglyBatchAppender<ILoggingEvent>() {
+      @Override
+      protected void processLogEntries(InputStream in) {
+        try {
+          loggly.await();
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          IoUtils.copy(in, out);
+          posts.add(out.toString("UTF-8"));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    appender.setContext(context);
+    appender.setEndpointUrl("http://localhost/");
+    appender.setPattern("%level %m%n");
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setPriorityLevel("WARN");
+    appender.setMaxBucketSizeInKilobytes(1);
+    appender.setMaxNumberOfBuckets(2);
+    appender.start();
+  }
+
+  @After
+  public void after() {
+    loggly.countDown();
+    appender.stop();
+  }
+
+  @Test
+  public void priorityEventsAreSentWithoutWaiting() throws Exception {
+    loggly.countDown();
+    appender.doAppend(event(Level.INFO, "buffered"));
+    appender.doAppend(event(Level.ERROR, "urgent"));
+
+    assertEquals("ERROR urgent\n", posts.poll(10, TimeUnit.SECONDS));
+    assertEquals(0, appender.getPriorityLogEntriesBufferSizeInBytes());
+    assertEquals("INFO buffered\n".length(), appender.getCurrentLogEntriesBufferSizeInBytes());
+  }
+
+  @Test
+  public void priorityEventsAreNotEvictedByLowerLevels() throws Exception {
+    appender.doAppend(event(Level.ERROR, "urgent"));
+    for (int i = 0; i < 100; i++) {
+      appender.doAppend(event(Level.INFO, "noise noise noise noise noise noise noise noise noise noise noise " + i));
+    }
+    assertTrue(appender.getDiscardedBucketsCount() > 0);
+
+    loggly.countDown();
+    assertEquals("ERROR urgent\n", posts.poll(10, TimeUnit.SECONDS));
+    assertEquals(0, appender.getPriorityDiscardedBucketsCount());
+  }
+
+  private ILoggingEvent event(Level level, String message) {
+    return new LoggingEvent(Logger.class.getName(), logger, level, message, null, null);
+  }
+}
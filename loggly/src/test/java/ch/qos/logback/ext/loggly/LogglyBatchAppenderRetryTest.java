@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.io.HeapBucket;
+import ch.qos.logback.ext.loggly.io.MappedSpillQueue;
+
+/**
+ * Tests the retry policy of the {@link LogglyBatchAppender} against a stub connection answering the queued
+ * response codes, then 200.
+ */
+public class LogglyBatchAppenderRetryTest {
+
+  private final Deque<Integer> responseCodes = new ArrayDeque<Integer>();
+  private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+  private LogglyBatchAppender<String> appender;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void before() {
+    appender = newAppender();
+    appender.start();
+  }
+
+  private LogglyBatchAppender<String> newAppender() {
+    LogglyBatchAppender<String> appender = new LogglyBatchAppenderWithStubConnection();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl("http://localhost/");
+    appender.setLayout(new EchoLayout<String>());
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setRetryInitialBackoffMillis(10);
+    appender.setRetryMaxBackoffMillis(20);
+    return appender;
+  }
+
+  @After
+  public void after() {
+    appender.stop();
+  }
+
+  @Test
+  public void retriesServerErrorsUntilSent() throws Exception {
+    responseCodes.addAll(Arrays.asList(503, 429));
+
+    appender.doAppend("message");
+    appender.processLogEntries();
+    waitFor(1);
+
+    assertEquals(2, appender.getSendRetryCount());
+    assertEquals(0, appender.getFailedBucketsCount());
+    assertEquals(0, appender.getConsecutiveSendFailureCount());
+    assertEquals("message\n", received.toString("UTF-8"));
+  }
+
+  @Test
+  public void givesUpAfterMaxSendAttempts() throws Exception {
+    responseCodes.addAll(Arrays.asList(500, 500, 500));
+
+    appender.doAppend("message");
+    appender.processLogEntries();
+    waitForFailedBuckets();
+
+    assertEquals(2, appender.getSendRetryCount());
+    assertEquals(3, appender.getSendExceptionCount());
+    assertEquals(0, appender.getSendSuccessCount());
+  }
+
+  @Test
+  public void doesNotRetryClientErrors() throws Exception {
+    responseCodes.add(400);
+
+    appender.doAppend("message");
+    appender.processLogEntries();
+    // the scheduled exporter may be the one sending the bucket
+    waitForFailedBuckets();
+
+    assertEquals(0, appender.getSendRetryCount());
+    assertEquals(0, appender.getCurrentBackoffInMillis());
+  }
+
+  @Test
+  public void givesUpSpilledBucketsAfterMaxSendAttempts() throws Exception {
+    responseCodes.addAll(Arrays.asList(500, 500, 500));
+
+    LogglyBatchAppender<String> spilling = startWithSpilledBucket("spilled\n");
+    try {
+      waitForFailedBuckets(spilling);
+
+      assertEquals(2, spilling.getSendRetryCount());
+      assertEquals(3, spilling.getSendExceptionCount());
+      assertEquals(0, spilling.getSpillSizeInBytes());
+    } finally {
+      spilling.stop();
+    }
+  }
+
+  @Test
+  public void doesNotRetrySpilledBucketsOnClientErrors() throws Exception {
+    responseCodes.add(400);
+
+    LogglyBatchAppender<String> spilling = startWithSpilledBucket("spilled\n");
+    try {
+      waitForFailedBuckets(spilling);
+
+      assertEquals(0, spilling.getSendRetryCount());
+      assertEquals(0, spilling.getSpillSizeInBytes());
+    } finally {
+      spilling.stop();
+    }
+  }
+
+  /**
+   * Starts an appender replaying a bucket spilled by a previous run.
+   */
+  private LogglyBatchAppender<String> startWithSpilledBucket(String content) throws Exception {
+    File spillDirectory = folder.newFolder("spill");
+    MappedSpillQueue spillQueue = new MappedSpillQueue(spillDirectory, 1024, 4096);
+    HeapBucket bucket = new HeapBucket();
+    bucket.writeUtf8(content);
+    assertTrue(spillQueue.offer(bucket));
+    spillQueue.close();
+
+    LogglyBatchAppender<String> spilling = newAppender();
+    spilling.setSpillDirectory(spillDirectory.getPath());
+    spilling.start();
+    spilling.processLogEntries();
+    return spilling;
+  }
+
+  private void waitFor(int sendSuccessCount) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (appender.getSendSuccessCount() < sendSuccessCount && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(sendSuccessCount, appender.getSendSuccessCount());
+  }
+
+  private void waitForFailedBuckets() throws InterruptedException {
+    waitForFailedBuckets(appender);
+  }
+
+  private void waitForFailedBuckets(LogglyBatchAppender<String> appender) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (appender.getFailedBucketsCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, appender.getFailedBucketsCount());
+  }
+
+  private class LogglyBatchAppenderWithStubConnection extends LogglyBatchAppender<String> {
+
+    @Override
+    protected HttpURLConnection getHttpConnection(URL url) throws IOException {
+      Integer responseCode;
+      synchronized (responseCodes) {
+        responseCode = responseCodes.poll();
+      }
+      return new StubConnection(url, responseCode == null ? HttpURLConnection.HTTP_OK : responseCode);
+    }
+  }
+
+  private class StubConnection extends HttpURLConnection {
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    StubConnection(URL url, int responseCode) {
+      super(url);
+      this.responseCode = responseCode;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return body;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+      if (responseCode == HTTP_OK) {
+        synchronized (received) {
+          body.writeTo(received);
+        }
+      }
+      return responseCode;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      if (responseCode >= HTTP_BAD_REQUEST) {
+        throw new IOException("Server returned HTTP response code: " + responseCode);
+      }
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream("error".getBytes());
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.testing.FakeBulkEndpoint;
+
+/**
+ * Tests the {@link LogglyBatchAppender} posting with several sender threads to a slow endpoint.
+ */
+public class LogglyBatchAppenderSenderThreadsTest {
+
+  private final FakeBulkEndpoint endpoint = new FakeBulkEndpoint();
+  private LogglyBatchAppender<String> appender;
+
+  @Before
+  public void before() throws IOException {
+    endpoint.setRecordBodies(true);
+    endpoint.setLatencyMillis(50);
+    endpoint.start();
+
+    appender = new LogglyBatchAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl(endpoint.getEndpointUrl());
+    appender.setLayout(new EchoLayout<String>());
+    appender.setJmxMonitoring(false);
+    appender.setLingerMillis(60000);
+    appender.setMaxBucketSizeInKilobytes(1);
+    appender.setMaxNumberOfBuckets(64);
+    appender.setSenderThreads(4);
+    appender.start();
+  }
+
+  @After
+  public void after() {
+    endpoint.stop();
+  }
+
+  @Test
+  public void deliversEveryBucketOnce() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 1000; i++) {
+      String message = "message " + i + " sent by one of the sender threads";
+      expected.add(message);
+      appender.doAppend(message);
+    }
+    // waits for the buckets in flight and sends the remaining ones
+    appender.stop();
+
+    List<String> received = new ArrayList<String>();
+    for (byte[] body : endpoint.getAcceptedBodies()) {
+      String lines = new String(body, "UTF-8");
+      assertTrue(lines.endsWith("\n"));
+      received.addAll(Arrays.asList(lines.split("\n")));
+    }
+    Collections.sort(expected);
+    Collections.sort(received);
+    // neither lost nor sent twice
+    assertEquals(expected, received);
+
+    assertEquals(0, appender.getDiscardedBucketsCount());
+    assertTrue(appender.getSendSuccessCount() > 4);
+    assertEquals(0, appender.getSendExceptionCount());
+    assertEquals(endpoint.getAcceptedRequestCount(), appender.getSendSuccessCount());
+    assertEquals(endpoint.getAcceptedBytes(), appender.getSentBytes());
+  }
+}
@@ -16,8 +16,6 @@
 package ch.qos.logback.ext.loggly;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -30,6 +28,7 @@ import org.junit.Test;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.testing.FakeBulkEndpoint;
 
 /**
  * Tests the LogglyBatchAppender
@@ -37,11 +36,11 @@ import ch.qos.logback.core.layout.EchoLayout;
 @Ignore
 public class LogglyBatchAppenderTest {
 
-  static private final int                   PORT           = 10800;
   static private final int                   MAX_BUCKETS    = 4;
   static private final int                   BUCKET_KB_SIZE = 1;
   static private final int                   MSG_SIZE       = BUCKET_KB_SIZE * 1024;
-  static private HttpTestServer              httpServer;
+  static private final long                  TIMEOUT_MILLIS = 180000;
+  static private FakeBulkEndpoint            httpServer;
   static private LogglyBatchAppender<String> appender;
   static private LoggerContext               context;
 
@@ -52,7 +51,7 @@ public class LogglyBatchAppenderTest {
    */
   @BeforeClass
   static public void beforeClass() throws IOException {
-    httpServer = new HttpTestServer(PORT);
+    httpServer = new FakeBulkEndpoint();
     httpServer.start();
     context = new LoggerContext();
   }
@@ -67,12 +66,12 @@ public class LogglyBatchAppenderTest {
   }
 
   @Before
-  public void before() throws UnknownHostException {
-    httpServer.clearRequests();
+  public void before() {
+    httpServer.reset();
 
     appender = new LogglyBatchAppender<String>();
     appender.setContext(context);
-    appender.setEndpointUrl("http://" + InetAddress.getLocalHost().getHostAddress() + ":" + PORT + "/");
+    appender.setEndpointUrl(httpServer.getEndpointUrl());
 
     appender.setLayout(new EchoLayout<String>());
     appender.setDebug(true);
@@ -93,29 +92,29 @@ public class LogglyBatchAppenderTest {
   }
 
   @Test(timeout = 180000)
-  public void sendsOnlyWhenMaxBucketsFull() {
+  public void sendsOnlyWhenMaxBucketsFull() throws InterruptedException {
     // assert nothing yet sent/received
     assertEquals(0, appender.getSendSuccessCount());
-    assertEquals(0, httpServer.requestCount());
+    assertEquals(0, httpServer.getRequestCount());
 
     // send stuff and wait for it to be received
     appendFullBuckets(MAX_BUCKETS);
-    httpServer.waitForRequests(MAX_BUCKETS);
+    httpServer.awaitRequests(MAX_BUCKETS, TIMEOUT_MILLIS);
 
     // assert stuff sent/received
     assertEquals(MAX_BUCKETS, appender.getSendSuccessCount());
-    assertEquals(MAX_BUCKETS, httpServer.requestCount());
+    assertEquals(MAX_BUCKETS, httpServer.getRequestCount());
   }
 
   @Test(timeout = 180000)
-  public void excessBucketsGetDiscarded() {
+  public void excessBucketsGetDiscarded() throws InterruptedException {
     // assert nothing yet discarded (because nothing is yet sent)
     assertEquals(0, appender.getDiscardedBucketsCount());
 
     // send stuff and wait for it to be received
     final int NUM_MSGS = 40;
     appendFullBuckets(NUM_MSGS);
-    httpServer.waitForRequests(MAX_BUCKETS);
+    httpServer.awaitRequests(MAX_BUCKETS, TIMEOUT_MILLIS);
 
     // assert excess buckets (those > MAX_BUCKETS) were discarded
     assertEquals(NUM_MSGS - MAX_BUCKETS, appender.getDiscardedBucketsCount());
@@ -159,7 +159,8 @@ public class LogglySendOnlyWhenMaxBucketsFullTest {
 
     verify(connection, atLeast(MAX_BUCKETS)).getOutputStream();
     verify(connection, atLeast(MAX_BUCKETS)).getInputStream();
-    verify(connection, atLeast(MAX_BUCKETS)).disconnect();
+    // connections are kept alive between posts
+    verify(connection, never()).disconnect();
   }
 
   /**
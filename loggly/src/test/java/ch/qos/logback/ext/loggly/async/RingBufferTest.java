@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the lock-free {@link RingBuffer} of the async mode.
+ */
+public class RingBufferTest {
+
+  @Test
+  public void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(8, new RingBuffer<String>(5).capacity());
+    assertEquals(8, new RingBuffer<String>(8).capacity());
+    assertEquals(2, new RingBuffer<String>(1).capacity());
+  }
+
+  @Test
+  public void rejectsOfferWhenFullAndWrapsAround() {
+    RingBuffer<String> ringBuffer = new RingBuffer<String>(2);
+
+    for (int lap = 0; lap < 3; lap++) {
+      assertTrue(ringBuffer.offer("a" + lap));
+      assertTrue(ringBuffer.offer("b" + lap));
+      assertFalse(ringBuffer.offer("c" + lap));
+      assertEquals(2, ringBuffer.size());
+
+      assertEquals("a" + lap, ringBuffer.poll());
+      assertEquals("b" + lap, ringBuffer.poll());
+      assertNull(ringBuffer.poll());
+      assertTrue(ringBuffer.isEmpty());
+    }
+  }
+
+  @Test
+  public void concurrentProducersAndConsumersNeitherLoseNorDuplicate() throws Exception {
+    final int producers = 4;
+    final int perProducer = 100000;
+    final RingBuffer<Integer> ringBuffer = new RingBuffer<Integer>(64);
+    final BitSet[] consumed = {new BitSet(), new BitSet()};
+    final CountDownLatch produced = new CountDownLatch(producers);
+
+    Thread[] threads = new Thread[producers + consumed.length];
+    for (int p = 0; p < producers; p++) {
+      final int offset = p * perProducer;
+      threads[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perProducer; i++) {
+            while (!ringBuffer.offer(offset + i)) {
+              Thread.yield();
+            }
+          }
+          produced.countDown();
+        }
+      });
+    }
+    for (int c = 0; c < consumed.length; c++) {
+      final BitSet bits = consumed[c];
+      threads[producers + c] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (true) {
+            Integer value = ringBuffer.poll();
+            if (value != null) {
+              bits.set(value);
+            } else if (produced.getCount() == 0 && ringBuffer.isEmpty()) {
+              return;
+            } else {
+              Thread.yield();
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    assertFalse(consumed[0].intersects(consumed[1]));
+    consumed[0].or(consumed[1]);
+    assertEquals(producers * perProducer, consumed[0].cardinality());
+  }
+}
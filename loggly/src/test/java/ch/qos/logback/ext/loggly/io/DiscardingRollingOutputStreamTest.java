@@ -0,0 +1,525 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the DiscardingRollingOutputStream
+ */
+public class DiscardingRollingOutputStreamTest {
+
+  static private final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void rollsBucketWhenMaxSizeReached() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(10, 4);
+
+    out.write("0123456789\n".getBytes(UTF_8));
+    out.write("abc\n".getBytes(UTF_8));
+
+    assertEquals(1, out.getFilledBuckets().size());
+    assertEquals(15, out.getCurrentOutputStreamSize());
+  }
+
+  @Test
+  public void countsBytesWrittenInBuckets() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(10, 4);
+
+    out.writeLine("abc");
+    out.writeLine("0123456789abc");
+    out.write("xy\n".getBytes(UTF_8));
+
+    assertEquals(4 + 14 + 3, out.getWrittenBytes());
+  }
+
+  @Test
+  public void rollsBucketAtTunedMaxSize() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    out.setMaxBucketSizeInBytes(10);
+
+    out.writeLine("0123456789");
+    out.writeLine("abc");
+    assertEquals(1, out.getFilledBuckets().size());
+
+    out.setMaxBucketSizeInBytes(4096);
+    assertEquals(1024, out.getMaxBucketSizeInBytes());
+  }
+
+  @Test
+  public void tracksAppendTimeOfOldestEvent() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    assertEquals(0, out.getOldestEventNanos());
+
+    long before = System.nanoTime();
+    out.writeLine("first");
+    out.writeLine("second");
+    out.rollCurrentBucket();
+    out.writeLine("third");
+
+    Bucket filled = out.getFilledBuckets().peek();
+    assertEquals(filled.getFirstEventNanos(), out.getOldestEventNanos());
+    assertTrue(filled.getFirstEventNanos() - before >= 0);
+    assertTrue(filled.getLastEventNanos() - filled.getFirstEventNanos() >= 0);
+
+    long secondAppendNanos = filled.getLastEventNanos();
+    out.recycleBucket(out.getFilledBuckets().poll());
+    assertTrue(out.getOldestEventNanos() - secondAppendNanos >= 0);
+  }
+
+  @Test
+  public void writesLinesInUtf8() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    String text = "ascii \u00e9t\u00e9 \u20ac \ud83d\ude00 \ud83d";
+
+    out.writeLine(text);
+    out.writeLine("already terminated\n");
+    out.writeLine("");
+    out.rollCurrentBucket();
+
+    byte[] expected = (text + "\nalready terminated\n\n").getBytes(UTF_8);
+    assertArrayEquals(expected, out.getFilledBuckets().poll().toByteArray());
+  }
+
+  @Test
+  public void truncatesLinesOnCharacterBoundary() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    out.setMaxEventSizeInBytes(DiscardingRollingOutputStream.TRUNCATION_MARKER.length() + 4);
+
+    // 4 bytes before the marker: 3 bytes fit before the 2 bytes '\u00e9', 2 bytes before the 4 bytes surrogate pair
+    out.writeLine("abc\u00e9 beyond the max event size\n");
+    out.writeLine("ab\ud83d\ude00 beyond the max event size");
+    out.writeLine("abcd");
+    out.rollCurrentBucket();
+
+    String marker = DiscardingRollingOutputStream.TRUNCATION_MARKER;
+    byte[] expected = ("abc" + marker + "\nab" + marker + "\nabcd\n").getBytes(UTF_8);
+    assertArrayEquals(expected, out.getFilledBuckets().poll().toByteArray());
+    assertEquals(2, out.getTruncatedEventCount());
+  }
+
+  @Test
+  public void rollsBucketBeforeExceedingMaxRequestSize() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    out.setMaxRequestSizeInBytes(20);
+
+    for (int i = 0; i < 5; i++) {
+      out.writeLine("line " + i);
+    }
+    out.rollCurrentBucket();
+
+    assertEquals("line 0\nline 1\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("line 2\nline 3\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("line 4\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void truncatesLinesLargerThanMaxRequestSize() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4);
+    out.setMaxRequestSizeInBytes(20);
+
+    out.writeLine("a line larger than the max request size");
+    out.rollCurrentBucket();
+
+    Bucket bucket = out.getFilledBuckets().poll();
+    assertEquals(20, bucket.size());
+    assertEquals("a lin" + DiscardingRollingOutputStream.TRUNCATION_MARKER + "\n", new String(bucket.toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void discardsBucketsBeyondMaxCount() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 4);
+
+    for (int i = 0; i < 10; i++) {
+      out.write('x');
+    }
+
+    assertEquals(4, out.getFilledBuckets().size());
+    assertEquals(6, out.getDiscardedBucketCount());
+  }
+
+  @Test
+  public void requeuedBucketIsPolledFirst() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(2, 3);
+
+    out.writeLine("a");
+    out.writeLine("b");
+    Bucket failed = out.getFilledBuckets().poll();
+
+    assertTrue(out.requeueBucket(failed));
+    assertEquals("a\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void requeuedBucketReplacesNewestWhenFull() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 2);
+
+    out.write('a');
+    Bucket failed = out.getFilledBuckets().poll();
+    out.write('b');
+    out.write('c');
+
+    assertTrue(out.requeueBucket(failed));
+    assertEquals(1, out.getDiscardedBucketCount());
+    assertEquals("a", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("b", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void requeuedBucketIsDiscardedWhenFullAndDiscardingOldest() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 2);
+    out.setOverflowPolicy(OverflowPolicy.DISCARD_OLDEST);
+
+    out.write('a');
+    Bucket failed = out.getFilledBuckets().poll();
+    out.write('b');
+    out.write('c');
+
+    assertFalse(out.requeueBucket(failed));
+    assertEquals(1, out.getDiscardedBucketCount());
+    assertEquals("b", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void requeuedBucketIsDiscardedWhenFullAndSampling() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 2);
+    out.setOverflowPolicy(OverflowPolicy.SAMPLE);
+
+    out.write('a');
+    Bucket failed = out.getFilledBuckets().poll();
+    failed.incrementEventCount();
+    out.write('b');
+    out.write('c');
+
+    assertFalse(out.requeueBucket(failed));
+    assertEquals(1, out.getDiscardedBucketCount());
+    assertEquals(1, out.getDroppedEventCount(OverflowPolicy.SAMPLE));
+    assertEquals("b", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("c", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void countsEventsDroppedWithNewestBucket() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(4, 2);
+
+    for (int i = 0; i < 10; i++) {
+      out.writeLine("a");
+    }
+
+    assertEquals(2, out.getFilledBuckets().size());
+    assertEquals(6, out.getDroppedEventCount(OverflowPolicy.DISCARD_NEWEST));
+    assertEquals(6, out.getDroppedEventCount());
+  }
+
+  @Test
+  public void discardOldestKeepsFreshBuckets() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(2, 2);
+    out.setOverflowPolicy(OverflowPolicy.DISCARD_OLDEST);
+
+    for (int i = 0; i < 5; i++) {
+      out.writeLine(String.valueOf(i));
+    }
+
+    assertEquals(3, out.getDroppedEventCount(OverflowPolicy.DISCARD_OLDEST));
+    assertEquals("3\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("4\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void blockWaitsForRoomThenTimesOut() throws Exception {
+    final DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(2, 2);
+    out.setOverflowPolicy(OverflowPolicy.BLOCK);
+    out.setBlockTimeoutMillis(50);
+    out.writeLine("0");
+    out.writeLine("1");
+
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          return;
+        }
+        out.getFilledBuckets().poll();
+      }
+    };
+    consumer.start();
+    out.writeLine("2");
+    consumer.join();
+
+    assertEquals(0, out.getDroppedEventCount());
+    out.writeLine("3");
+    assertEquals(1, out.getDroppedEventCount(OverflowPolicy.BLOCK));
+  }
+
+  @Test
+  public void blockLetsTheConsumerRollWhileWaiting() throws Exception {
+    final DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 2);
+    out.setMaxBucketSizeInBytes(2);
+    out.setOverflowPolicy(OverflowPolicy.BLOCK);
+    out.setBlockTimeoutMillis(10000);
+    out.writeLine("0");
+    out.writeLine("1");
+
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          out.writeLine("2");
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    writer.start();
+    awaitWaiting(writer);
+
+    // the consumer goes on while the writer waits for room
+    out.rollCurrentBucketIfNotEmpty();
+    assertTrue(writer.isAlive());
+    assertEquals(0, out.getDiscardedBucketCount());
+
+    assertEquals("0\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    writer.join(10000);
+    assertFalse(writer.isAlive());
+    assertEquals(0, out.getDroppedEventCount());
+    assertEquals("1\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("2\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals(0, out.getCurrentOutputStreamSize());
+  }
+
+  @Test
+  public void blockedWritersDoNotAllocateBuckets() throws Exception {
+    final AtomicInteger allocatedBuckets = new AtomicInteger();
+    final DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 4) {
+      @Override
+      protected Bucket newBucket() {
+        allocatedBuckets.incrementAndGet();
+        return super.newBucket();
+      }
+    };
+    out.setMaxBucketSizeInBytes(2);
+    out.setOverflowPolicy(OverflowPolicy.BLOCK);
+    out.setBlockTimeoutMillis(10000);
+    for (int i = 0; i < 4; i++) {
+      out.writeLine(String.valueOf(i));
+    }
+    assertEquals(5, allocatedBuckets.get());
+
+    Thread[] writers = new Thread[16];
+    for (int i = 0; i < writers.length; i++) {
+      final String line = String.valueOf((char) ('a' + i));
+      writers[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            out.writeLine(line);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      writers[i].start();
+    }
+    for (Thread writer : writers) {
+      awaitWaiting(writer);
+    }
+
+    // one writer waits with its full bucket, the other ones wait for the stripe
+    assertEquals(5, allocatedBuckets.get());
+    assertEquals(4, out.getFilledBuckets().size());
+    assertEquals(2, out.getCurrentOutputStreamSize() - 4 * 2);
+
+    StringBuilder consumed = new StringBuilder();
+    for (Thread writer : writers) {
+      while (writer.isAlive()) {
+        Bucket bucket = out.getFilledBuckets().poll(10, TimeUnit.MILLISECONDS);
+        if (bucket != null) {
+          consumed.append(new String(bucket.toByteArray(), UTF_8));
+          out.recycleBucket(bucket);
+        }
+      }
+    }
+    out.rollCurrentBucketIfNotEmpty();
+    Bucket bucket;
+    while ((bucket = out.getFilledBuckets().poll()) != null) {
+      consumed.append(new String(bucket.toByteArray(), UTF_8));
+    }
+    assertEquals(0, out.getDroppedEventCount());
+    assertEquals(4 + writers.length, consumed.toString().split("\n").length);
+  }
+
+  /**
+   * Waits for the given thread to block, on the lock of its stripe or for room.
+   */
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (thread.getState() != Thread.State.TIMED_WAITING && thread.getState() != Thread.State.WAITING
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void sampleKeepsTheActiveBucketWithoutRoom() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 2);
+    out.setMaxBucketSizeInBytes(4);
+    out.setOverflowPolicy(OverflowPolicy.SAMPLE);
+    out.setSampleRate(1);
+    for (int i = 0; i < 6; i++) {
+      out.writeLine(String.valueOf(i));
+    }
+
+    // the active bucket is full and can't be rolled
+    out.writeLine("6");
+    out.rollCurrentBucketIfNotEmpty();
+    assertEquals(0, out.getDiscardedBucketCount());
+    assertEquals(1, out.getDroppedEventCount(OverflowPolicy.SAMPLE));
+
+    out.getFilledBuckets().poll();
+    out.writeLine("7");
+    assertEquals("2\n3\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals("4\n5\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+    assertEquals(2, out.getCurrentOutputStreamSize());
+  }
+
+  @Test
+  public void sampleKeepsSomeLinesWhileSaturated() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 2);
+    out.setOverflowPolicy(OverflowPolicy.SAMPLE);
+    out.setSampleRate(0);
+    out.writeLine("0");
+    out.rollCurrentBucket();
+    out.writeLine("1");
+    out.rollCurrentBucket();
+
+    for (int i = 0; i < 10; i++) {
+      out.writeLine("sampled out");
+    }
+
+    assertEquals(10, out.getDroppedEventCount(OverflowPolicy.SAMPLE));
+    assertEquals(4, out.getCurrentOutputStreamSize());
+  }
+
+  @Test
+  public void activeStripesCountAgainstMaxCount() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 4, 3);
+
+    for (int i = 0; i < 10; i++) {
+      out.write('x');
+    }
+
+    assertEquals(2, out.getFilledBuckets().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMoreStripesThanBuckets() {
+    new DiscardingRollingOutputStream(1024, 4, 5);
+  }
+
+  @Test
+  public void offHeapBucketsRollBeforeOverflowing() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(16, 4, 1, true);
+
+    out.writeLine("0123456789");
+    out.writeLine("\u00e9\u00e9\u00e9");
+    out.rollCurrentBucketIfNotEmpty();
+
+    Bucket first = out.getFilledBuckets().poll();
+    assertTrue(first instanceof DirectBucket);
+    assertEquals("0123456789\n", new String(first.toByteArray(), UTF_8));
+    assertEquals("\u00e9\u00e9\u00e9\n", new String(out.getFilledBuckets().poll().toByteArray(), UTF_8));
+  }
+
+  @Test
+  public void offHeapBucketsSplitOversizedContent() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(4, 4, 1, true);
+
+    out.writeLine("0123456789");
+    out.rollCurrentBucketIfNotEmpty();
+
+    StringBuilder content = new StringBuilder();
+    for (Bucket bucket : out.getFilledBuckets()) {
+      content.append(new String(bucket.toByteArray(), UTF_8));
+    }
+    assertEquals(3, out.getFilledBuckets().size());
+    assertEquals("0123456789\n", content.toString());
+  }
+
+  @Test
+  public void offHeapBucketsAreRecycled() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(8, 2, 1, true);
+
+    for (int i = 0; i < 100; i++) {
+      out.writeLine("line " + i);
+      Bucket bucket;
+      while ((bucket = out.getFilledBuckets().poll()) != null) {
+        assertTrue(bucket instanceof DirectBucket);
+        out.recycleBucket(bucket);
+      }
+    }
+    assertEquals(0, out.getDiscardedBucketCount());
+  }
+
+  @Test
+  public void stripedWritesKeepLinesWhole() throws Exception {
+    final int threads = 8;
+    final int linesPerThread = 1000;
+    final DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1024, 1024, 4);
+    final CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      final String line = "thread-" + t + "-" + new String(new char[20]).replace("\0", "X") + "\n";
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < linesPerThread; i++) {
+              out.write(line.getBytes(UTF_8));
+            }
+          } catch (Exception e) {
+            e.printStackTrace();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+    done.await();
+    out.rollCurrentBucketIfNotEmpty();
+
+    assertEquals(0, out.getDiscardedBucketCount());
+    int lines = 0;
+    for (Bucket bucket : out.getFilledBuckets()) {
+      for (String line : new String(bucket.toByteArray(), UTF_8).split("\n")) {
+        assertTrue(line, line.matches("thread-\\d-X{20}"));
+        lines++;
+      }
+    }
+    assertEquals(threads * linesPerThread, lines);
+  }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the MappedSpillQueue
+ */
+public class MappedSpillQueueTest {
+
+  static private final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void pollsRecordsInFifoOrderAcrossSegments() throws Exception {
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(bucket("record-" + i + "\n")));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals("record-" + i + "\n", peek(queue));
+      queue.remove();
+    }
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.getSizeInBytes());
+    // the last segment and the preallocated next one
+    assertEquals(2, folder.getRoot().listFiles().length);
+  }
+
+  @Test
+  public void offerOnlyUsesPreallocatedSegments() throws Exception {
+    final List<Runnable> preallocations = new ArrayList<Runnable>();
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    queue.setPreallocationExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        preallocations.add(command);
+      }
+    });
+
+    // 3 records fill the segment preallocated by the constructor
+    for (int i = 0; i < 3; i++) {
+      assertTrue(queue.offer(bucket("record-" + i + "\n")));
+    }
+    assertEquals(1, preallocations.size());
+    assertFalse(queue.offer(bucket("record-3\n")));
+
+    preallocations.get(0).run();
+    assertTrue(queue.offer(bucket("record-3\n")));
+    assertEquals(2, folder.getRoot().listFiles().length);
+  }
+
+  @Test
+  public void peekDoesNotRemove() throws Exception {
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    queue.offer(bucket("first\n"));
+
+    assertEquals("first\n", peek(queue));
+    assertEquals("first\n", peek(queue));
+  }
+
+  @Test
+  public void rejectsRecordsBeyondMaxSize() throws Exception {
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 128);
+
+    assertFalse(queue.offer(bucket(new String(new char[64]).replace("\0", "X"))));
+    int offered = 0;
+    while (queue.offer(bucket("0123456789\n"))) {
+      offered++;
+    }
+    assertEquals(6, offered);
+  }
+
+  @Test
+  public void replaysRecordsLeftByPreviousQueue() throws Exception {
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(bucket("record-" + i + "\n"));
+    }
+    queue.remove();
+    queue.close();
+
+    MappedSpillQueue reopened = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    for (int i = 1; i < 5; i++) {
+      assertEquals("record-" + i + "\n", peek(reopened));
+      reopened.remove();
+    }
+    assertTrue(reopened.isEmpty());
+    reopened.offer(bucket("after\n"));
+    assertEquals("after\n", peek(reopened));
+  }
+
+  @Test
+  public void quarantinesSegmentsWithInvalidHeader() throws Exception {
+    File invalid = new File(folder.getRoot(), "0000000000000000005.spill");
+    RandomAccessFile raf = new RandomAccessFile(invalid, "rw");
+    raf.setLength(64);
+    raf.close();
+
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+
+    assertEquals(1, queue.getQuarantinedSegmentCount());
+    assertFalse(invalid.exists());
+    assertTrue(new File(folder.getRoot(), "0000000000000000005.spill.corrupt").exists());
+    assertTrue(queue.isEmpty());
+    assertTrue(queue.offer(bucket("after\n")));
+    assertEquals("after\n", peek(queue));
+    // the sequence of the quarantined segment is not reused
+    assertTrue(new File(folder.getRoot(), "0000000000000000006.spill").exists());
+  }
+
+  @Test
+  public void quarantinesSegmentsWithCorruptRecordLength() throws Exception {
+    MappedSpillQueue queue = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    // 3 records per segment
+    for (int i = 0; i < 6; i++) {
+      assertTrue(queue.offer(bucket("record-" + i + "\n")));
+    }
+    queue.close();
+    // length of the first record beyond the written records
+    RandomAccessFile raf = new RandomAccessFile(new File(folder.getRoot(), "0000000000000000000.spill"), "rw");
+    raf.seek(16);
+    raf.writeInt(1000);
+    raf.close();
+
+    MappedSpillQueue reopened = new MappedSpillQueue(folder.getRoot(), 64, 1024);
+    assertEquals("record-3\n", peek(reopened));
+
+    assertEquals(1, reopened.getQuarantinedSegmentCount());
+    assertTrue(new File(folder.getRoot(), "0000000000000000000.spill.corrupt").exists());
+  }
+
+  @Test
+  public void spillsBucketsThatDoNotFitInMemory() throws Exception {
+    DiscardingRollingOutputStream out = new DiscardingRollingOutputStream(1, 2);
+    out.setSpillQueue(new MappedSpillQueue(new File(folder.getRoot(), "spill"), 1024, 4096));
+
+    for (int i = 0; i < 5; i++) {
+      out.write('0' + i);
+    }
+
+    assertEquals(0, out.getDiscardedBucketCount());
+    assertEquals(3, out.getSpilledBucketCount());
+    StringBuilder spilled = new StringBuilder();
+    Bucket bucket;
+    while ((bucket = out.peekSpilledBucket()) != null) {
+      spilled.append(new String(bucket.toByteArray(), UTF_8));
+      out.recycleBucket(bucket);
+      out.removeSpilledBucket();
+    }
+    assertEquals("234", spilled.toString());
+  }
+
+  private Bucket bucket(String content) throws IOException {
+    HeapBucket bucket = new HeapBucket();
+    bucket.writeUtf8(content);
+    return bucket;
+  }
+
+  private String peek(MappedSpillQueue queue) throws IOException {
+    HeapBucket bucket = new HeapBucket();
+    assertTrue(queue.peek(bucket));
+    return new String(bucket.toByteArray(), UTF_8);
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the precision of the {@link Histogram}.
+ */
+public class HistogramTest {
+
+  @Test
+  public void percentilesAreWithinPrecision() {
+    Histogram histogram = new Histogram(1000000);
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i * 10);
+    }
+
+    assertEquals(10000, histogram.getTotalCount());
+    assertEquals(100000, histogram.getMax());
+    assertEquals(50005, histogram.getMean(), 0.001);
+    assertWithinPrecision(50000, histogram.getValueAtPercentile(50));
+    assertWithinPrecision(99000, histogram.getValueAtPercentile(99));
+    assertEquals(100000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void clampsValuesOutOfRange() {
+    Histogram histogram = new Histogram(1000);
+    histogram.record(-1);
+    histogram.record(5000);
+
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(1000, histogram.getMax());
+    assertEquals(0, new Histogram(1000).getValueAtPercentile(99));
+  }
+
+  @Test
+  public void indexesCoverTheirValues() {
+    for (long value = 0; value < 1L << 40; value = value * 3 / 2 + 1) {
+      long highest = Histogram.highestValueAt(Histogram.indexOf(value));
+      assertTrue(value + " -> " + highest, highest >= value && highest - value <= value / 32);
+    }
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 32);
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the moving averages of the {@link Meter}.
+ */
+public class MeterTest {
+
+  @Test
+  public void ratesDecayAfterFirstTick() {
+    Meter meter = new Meter();
+    meter.mark(10 * Meter.TICK_INTERVAL_IN_SECONDS);
+    meter.tick();
+
+    assertEquals(10, meter.getOneMinuteRate(), 0.001);
+    assertEquals(10, meter.getFiveMinutesRate(), 0.001);
+
+    meter.tick();
+
+    assertEquals(10 * Math.exp(-Meter.TICK_INTERVAL_IN_SECONDS / 60.0), meter.getOneMinuteRate(), 0.001);
+    assertTrue(meter.getFiveMinutesRate() > meter.getOneMinuteRate());
+    assertEquals(10 * Meter.TICK_INTERVAL_IN_SECONDS, meter.getCount());
+  }
+
+  @Test
+  public void countsEachMarkInOneTick() {
+    Meter meter = new Meter();
+    for (int i = 0; i < 3; i++) {
+      meter.mark(10 * Meter.TICK_INTERVAL_IN_SECONDS);
+      meter.tick();
+
+      assertEquals(10, meter.getOneMinuteRate(), 0.001);
+    }
+    meter.tick();
+
+    assertEquals(10 * Math.exp(-Meter.TICK_INTERVAL_IN_SECONDS / 60.0), meter.getOneMinuteRate(), 0.001);
+    assertEquals(30 * Meter.TICK_INTERVAL_IN_SECONDS, meter.getCount());
+  }
+}
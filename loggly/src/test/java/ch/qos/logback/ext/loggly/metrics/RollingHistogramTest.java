@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the windows of the {@link RollingHistogram}.
+ */
+public class RollingHistogramTest {
+
+  @Test
+  public void percentilesCoverTheLastTwoWindows() {
+    RollingHistogram histogram = new RollingHistogram(1000);
+    for (int i = 0; i < 100; i++) {
+      histogram.record(900);
+    }
+    histogram.tick();
+    histogram.record(10);
+
+    assertEquals(101, histogram.getTotalCount());
+    assertEquals(900, histogram.getMax());
+    assertEquals(900, histogram.getValueAtPercentile(99));
+
+    histogram.tick();
+
+    assertEquals(1, histogram.getTotalCount());
+    assertEquals(10, histogram.getMax());
+    assertEquals(10, histogram.getValueAtPercentile(99));
+
+    histogram.tick();
+
+    assertEquals(0, histogram.getTotalCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+}
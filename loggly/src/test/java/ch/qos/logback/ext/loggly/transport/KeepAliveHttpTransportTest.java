@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.transport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.layout.EchoLayout;
+import ch.qos.logback.ext.loggly.LogglyAppender;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests that the {@link KeepAliveHttpTransport} reuses connections between posts.
+ */
+public class KeepAliveHttpTransportTest {
+
+  private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+  private HttpServer server;
+  private int status = 200;
+
+  @Before
+  public void before() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        InputStream in = exchange.getRequestBody();
+        while (in.read() != -1) {
+          // consume the request
+        }
+        byte[] response = "{\"response\":\"ok\"}".getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, response.length);
+        exchange.getResponseBody().write(response);
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void after() {
+    server.stop(0);
+  }
+
+  @Test
+  public void reusesConnectionBetweenPosts() {
+    LogglyAppender<String> appender = newAppender();
+
+    for (int i = 0; i < 5; i++) {
+      appender.doAppend("message " + i);
+    }
+    appender.stop();
+
+    assertEquals(1, clientPorts.size());
+    // HttpURLConnection doesn't tell whether it reused a plain HTTP connection
+    assertEquals(0, appender.getNewConnectionCount());
+    assertEquals(0, appender.getReusedConnectionCount());
+  }
+
+  @Test
+  public void reusesConnectionAfterErrorResponse() {
+    status = 503;
+    LogglyAppender<String> appender = newAppender();
+
+    appender.doAppend("message 1");
+    appender.doAppend("message 2");
+    appender.stop();
+
+    assertEquals(1, clientPorts.size());
+  }
+
+  private LogglyAppender<String> newAppender() {
+    LogglyAppender<String> appender = new LogglyAppender<String>();
+    appender.setContext(new LoggerContext());
+    appender.setEndpointUrl("http://localhost:" + server.getAddress().getPort() + "/");
+    appender.setLayout(new EchoLayout<String>());
+    appender.start();
+    return appender;
+  }
+}
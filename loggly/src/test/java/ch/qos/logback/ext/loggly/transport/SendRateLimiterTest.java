@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2014 The logback-extensions developers (logback-user@qos.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.qos.logback.ext.loggly.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the token buckets of the {@link SendRateLimiter}.
+ */
+public class SendRateLimiterTest {
+
+  @Test
+  public void throttlesBytesBeyondRate() {
+    SendRateLimiter limiter = new SendRateLimiter(1000, 0);
+
+    assertEquals(0, limiter.tryAcquire(600));
+    long waitNanos = limiter.tryAcquire(600);
+
+    assertTrue(waitNanos > 0);
+    assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(200));
+    assertEquals(-1, limiter.getAvailableRequests());
+  }
+
+  @Test
+  public void throttlesRequestsBeyondRate() {
+    SendRateLimiter limiter = new SendRateLimiter(0, 2);
+
+    assertEquals(0, limiter.tryAcquire(1 << 20));
+    assertEquals(0, limiter.tryAcquire(1 << 20));
+    assertTrue(limiter.tryAcquire(1) > 0);
+    assertEquals(-1, limiter.getAvailableBytes());
+  }
+
+  @Test
+  public void largePostIsSentThenPaidBack() {
+    SendRateLimiter limiter = new SendRateLimiter(1000, 0);
+
+    assertEquals(0, limiter.tryAcquire(5000));
+
+    assertEquals(0, limiter.getAvailableBytes());
+    assertTrue(limiter.tryAcquire(1) > TimeUnit.SECONDS.toNanos(3));
+  }
+}